@@ -0,0 +1,112 @@
+package io.github.perseverantdt.dprpbuilder.benchmarks;
+
+import io.github.perseverantdt.dprpbuilder.core.Datapack;
+import io.github.perseverantdt.dprpbuilder.core.ResourcePack;
+import io.github.perseverantdt.dprpbuilder.util.BuildMetrics;
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.PackFormat;
+import io.github.perseverantdt.dprpbuilder.util.ProgramConfigs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Measures full, non-incremental builds of either pack, from scanning its folder to the finished output.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class BuildBenchmark {
+    // The formats of Minecraft 1.19.2.
+    static final PackFormat DATAPACK_FORMAT = PackFormat.of(10);
+    static final PackFormat RESOURCE_PACK_FORMAT = PackFormat.of(9);
+
+    @Param({"datapack", "resourcepack"})
+    public String pack;
+    @Param({"1000"})
+    public int fileCount;
+    @Param({"4096"})
+    public int fileSize;
+    @Param({SyntheticWorkspace.MIX_TEXT, SyntheticWorkspace.MIX_MIXED})
+    public String mix;
+
+    SyntheticWorkspace workspace;
+    Path outputPath;
+    ForkJoinPool compressionPool;
+    BuildOptions options;
+    long bytes;
+    PrintStream out;
+
+    @Setup(Level.Trial)
+    public void createWorkspace() throws IOException {
+        workspace = SyntheticWorkspace.create(fileCount, fileSize, mix, 42);
+        outputPath = workspace.getRoot().resolve("out");
+        bytes = pack.equals("datapack") ? workspace.getDataBytes() : workspace.getAssetBytes();
+
+        // The default configs, except that every build starts from scratch.
+        ProgramConfigs configs;
+        try (InputStream defaultConfigs = ProgramConfigs.class.getResourceAsStream("/dprpbuilder.ini")) {
+            if (defaultConfigs == null) throw new IOException("Could not find the default configs.");
+            configs = ProgramConfigs.fromIniText(new String(defaultConfigs.readAllBytes(), StandardCharsets.UTF_8), "Default configs", Map.of("Datapack.incremental", "no", "ResourcePack.incremental", "no"));
+        }
+        compressionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        options = pack.equals("datapack") ? configs.createDatapackBuildOptions(compressionPool) : configs.createAssetPackBuildOptions(compressionPool);
+
+        // Every build prints where it was written, which would otherwise flood the benchmark output.
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+    @TearDown(Level.Trial)
+    public void deleteWorkspace() throws IOException {
+        System.setOut(out);
+        compressionPool.shutdown();
+        workspace.close();
+    }
+
+    @Benchmark
+    public void buildAsZipInMemory(Throughput throughput) throws IOException {
+        if (pack.equals("datapack")) createDatapack().buildAsZipInMemory(outputPath, true, options);
+        else createResourcePack().buildAsZipInMemory(outputPath, true, options);
+        throughput.add(bytes, fileCount);
+    }
+    @Benchmark
+    public void buildAsZip(Throughput throughput) throws IOException {
+        if (pack.equals("datapack")) createDatapack().buildAsZip(outputPath, true, options);
+        else createResourcePack().buildAsZip(outputPath, true, options);
+        throughput.add(bytes, fileCount);
+    }
+    @Benchmark
+    public void buildAsFolder(Throughput throughput) throws IOException {
+        if (pack.equals("datapack")) createDatapack().buildAsFolder(outputPath, true, options);
+        else createResourcePack().buildAsFolder(outputPath, true, options);
+        throughput.add(bytes, fileCount);
+    }
+
+    Datapack createDatapack() throws IOException {
+        return Datapack.createDatapack(workspace.getDataFolder(), DATAPACK_FORMAT, "Benchmark", "", null, null, null, null, new BuildMetrics("Benchmark", 0, false));
+    }
+    ResourcePack createResourcePack() throws IOException {
+        return ResourcePack.createResourcePack(workspace.getAssetFolder(), RESOURCE_PACK_FORMAT, "Benchmark", "", null, null, null, null, new BuildMetrics("Benchmark", 0, false));
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.perseverantdt.dprpbuilder.benchmarks;
+
+import io.github.perseverantdt.dprpbuilder.core.Datapack;
+import io.github.perseverantdt.dprpbuilder.core.ResourcePack;
+import io.github.perseverantdt.dprpbuilder.util.BuildMetrics;
+import io.github.perseverantdt.dprpbuilder.util.FileScanner;
+import io.github.perseverantdt.dprpbuilder.util.PackEntry;
+import io.github.perseverantdt.dprpbuilder.util.PackFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Measures finding the files of a pack, on its own and as part of creating the pack.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScanBenchmark {
+    // The formats of Minecraft 1.19.2.
+    static final PackFormat DATAPACK_FORMAT = PackFormat.of(10);
+    static final PackFormat RESOURCE_PACK_FORMAT = PackFormat.of(9);
+
+    @Param({"1000", "10000"})
+    public int fileCount;
+    @Param({"2048"})
+    public int fileSize;
+    @Param({SyntheticWorkspace.MIX_MIXED})
+    public String mix;
+
+    SyntheticWorkspace workspace;
+    FileScanner dataScanner;
+    FileScanner assetScanner;
+
+    @Setup(Level.Trial)
+    public void createWorkspace() throws IOException {
+        workspace = SyntheticWorkspace.create(fileCount, fileSize, mix, 42);
+        dataScanner = Datapack.getScanner();
+        assetScanner = ResourcePack.getScanner();
+    }
+    @TearDown(Level.Trial)
+    public void deleteWorkspace() throws IOException {
+        workspace.close();
+    }
+
+    @Benchmark
+    public List<PackEntry> scanDataFolder(Throughput throughput) throws IOException {
+        throughput.add(workspace.getDataBytes(), fileCount);
+        return dataScanner.scan(workspace.getDataFolder(), "data/");
+    }
+    @Benchmark
+    public List<PackEntry> scanAssetFolder(Throughput throughput) throws IOException {
+        throughput.add(workspace.getAssetBytes(), fileCount);
+        return assetScanner.scan(workspace.getAssetFolder(), "assets/");
+    }
+    @Benchmark
+    public Datapack createDatapack(Throughput throughput) throws IOException {
+        throughput.add(workspace.getDataBytes(), fileCount);
+        return Datapack.createDatapack(workspace.getDataFolder(), DATAPACK_FORMAT, "Benchmark", "", null, null, null, null, new BuildMetrics("Benchmark", 0, false));
+    }
+    @Benchmark
+    public ResourcePack createResourcePack(Throughput throughput) throws IOException {
+        throughput.add(workspace.getAssetBytes(), fileCount);
+        return ResourcePack.createResourcePack(workspace.getAssetFolder(), RESOURCE_PACK_FORMAT, "Benchmark", "", null, null, null, null, new BuildMetrics("Benchmark", 0, false));
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.perseverantdt.dprpbuilder.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// A temporary workspace with a data and an assets folder full of generated files. Text files are made of repeated
+// command and model snippets so that they compress like real ones, and binary files are random so that they do not.
+public class SyntheticWorkspace implements Closeable {
+    public static final String MIX_TEXT = "text";
+    public static final String MIX_MIXED = "mixed";
+    static final int FILES_PER_FOLDER = 100;
+
+    Path root;
+    Path dataFolder;
+    Path assetFolder;
+    long dataBytes;
+    long assetBytes;
+
+    public Path getRoot() {
+        return root;
+    }
+    public Path getDataFolder() {
+        return dataFolder;
+    }
+    public Path getAssetFolder() {
+        return assetFolder;
+    }
+    public long getDataBytes() {
+        return dataBytes;
+    }
+    public long getAssetBytes() {
+        return assetBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Creates fileCount files in each of the two folders, between half and one and a half times averageFileSize bytes
+    // each. With MIX_MIXED, a fifth of the assets are incompressible sounds and structures.
+    public static SyntheticWorkspace create(int fileCount, int averageFileSize, String mix, long seed) throws IOException {
+        if (!mix.equals(MIX_TEXT) && !mix.equals(MIX_MIXED)) throw new IllegalArgumentException("Unknown file mix: " + mix);
+
+        Random random = new Random(seed);
+        SyntheticWorkspace workspace = new SyntheticWorkspace(Files.createTempDirectory("dprpbuilder-benchmark"));
+        for (int i = 0; i < fileCount; i++) {
+            int size = averageFileSize / 2 + random.nextInt(averageFileSize + 1);
+            String folder = "bench/functions/f" + (i / FILES_PER_FOLDER) + "/";
+            if (i % 5 < 3) workspace.dataBytes += write(workspace.dataFolder.resolve(folder + "function" + i + ".mcfunction"), text(COMMAND, i, size));
+            else workspace.dataBytes += write(workspace.dataFolder.resolve("bench/advancements/a" + (i / FILES_PER_FOLDER) + "/advancement" + i + ".json"), text(ADVANCEMENT, i, size));
+        }
+        for (int i = 0; i < fileCount; i++) {
+            int size = averageFileSize / 2 + random.nextInt(averageFileSize + 1);
+            String folder = "b" + (i / FILES_PER_FOLDER) + "/";
+            if (mix.equals(MIX_MIXED) && i % 10 == 0) workspace.assetBytes += write(workspace.assetFolder.resolve("bench/sounds/" + folder + "sound" + i + ".ogg"), bytes(random, size));
+            else if (mix.equals(MIX_MIXED) && i % 10 == 5) workspace.assetBytes += write(workspace.assetFolder.resolve("bench/structures/" + folder + "structure" + i + ".nbt"), bytes(random, size));
+            else workspace.assetBytes += write(workspace.assetFolder.resolve("bench/models/" + folder + "model" + i + ".json"), text(MODEL, i, size));
+        }
+        return workspace;
+    }
+
+    static final String COMMAND = "execute as @a[tag=bench_%1$d,scores={timer=%2$d..}] at @s run particle minecraft:flame ~ ~1 ~ 0.1 0.1 0.1 0 %2$d\n";
+    static final String ADVANCEMENT = "{\"criteria\":{\"tick_%2$d\":{\"trigger\":\"minecraft:tick\"}},\"rewards\":{\"function\":\"bench:reward_%1$d\"}}\n";
+    static final String MODEL = "{\"parent\":\"minecraft:block/cube_all\",\"textures\":{\"all\":\"bench:block/block_%1$d_%2$d\"}}\n";
+
+    static byte[] text(String template, int index, int size) {
+        StringBuilder text = new StringBuilder(size + template.length() * 2);
+        for (int line = 0; text.length() < size; line++) {
+            text.append(String.format(template, index, line));
+        }
+        text.setLength(size);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    static byte[] bytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+    static long write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        return content.length;
+    }
+
+    SyntheticWorkspace(Path root) {
+        this.root = root;
+        this.dataFolder = root.resolve("data");
+        this.assetFolder = root.resolve("assets");
+    }
+}
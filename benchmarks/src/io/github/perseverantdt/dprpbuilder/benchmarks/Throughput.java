@@ -0,0 +1,27 @@
+package io.github.perseverantdt.dprpbuilder.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Counts the bytes and files every benchmark invocation went through. JMH reports the counters per second, which gives
+// MB/s and files/s next to the usual operations per second.
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Throughput {
+    public double megabytes;
+    public long files;
+
+    public void add(long bytes, long fileCount) {
+        megabytes += bytes / 1_000_000.0;
+        files += fileCount;
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        files = 0;
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.perseverantdt.dprpbuilder;
+
+import io.github.perseverantdt.dprpbuilder.core.Datapack;
+import io.github.perseverantdt.dprpbuilder.core.ResourcePack;
+import io.github.perseverantdt.dprpbuilder.util.BuildMetrics;
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.ProgramConfigs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Builds the datapack and the resource pack at the same time. The two builds share nothing but the compression pool, so
+// building both takes about as long as the longer of the two.
+public class BuildPipeline {
+    ProgramConfigs configs;
+    BuildOptions datapackOptions;
+    BuildOptions resourcePackOptions;
+    boolean watch;
+
+    // Returns the result of every pack that was built, datapack first, once all of them are done. Their metrics are
+    // written to the metrics report if there is one.
+    public List<Result> build(boolean datapack, boolean resourcePack) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "DPRPBuilder pack build");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<Result> datapackResult = datapack ? executor.submit(() -> run(newMetrics("Datapack"), this::buildDatapack)) : null;
+            Future<Result> resourcePackResult = resourcePack ? executor.submit(() -> run(newMetrics("Resource pack"), this::buildResourcePack)) : null;
+
+            ArrayList<Result> results = new ArrayList<>();
+            if (datapackResult != null) results.add(get(datapackResult));
+            if (resourcePackResult != null) results.add(get(resourcePackResult));
+            if (configs.getMetricsReportPath() != null && !results.isEmpty()) writeReport(results);
+            trimCache(datapackOptions);
+            trimCache(resourcePackOptions);
+            return results;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    void buildDatapack(BuildMetrics metrics) throws IOException {
+        Datapack datapack = Datapack.createDatapack(configs.getDataFolderPath(), configs.getDatapackFormat(), configs.getDatapackName(), configs.getDatapackDescription(), configs.getBuildVersion(), (configs.getDatapackPackPngPath() != null) ? configs.getDatapackPackPngPath() : configs.getGeneralPackPngPath(), (configs.getDatapackReadMePath() != null) ? configs.getDatapackReadMePath() : configs.getGeneralReadMePath(), (configs.getDatapackLicensePath() != null) ? configs.getDatapackLicensePath() : configs.getGeneralLicensePath(), metrics);
+        // Watch mode always rebuilds over the previous output so that only changed files are written again.
+        boolean overwrite = watch || configs.isDatapackOverwriteOutput();
+
+        if (configs.isMultipleTargets()) {
+            if (configs.isDatapackBuildZipped()) datapack.buildVariantsAsZip(configs.getOutputPath(), overwrite, datapackOptions, configs.getDatapackFormats());
+            else datapack.buildVariantsAsFolder(configs.getOutputPath(), overwrite, datapackOptions, configs.getDatapackFormats());
+        }
+        else if (configs.isDatapackBuildZipped()) {
+            if (configs.isStreamZip()) datapack.buildAsZip(configs.getOutputPath(), overwrite, datapackOptions);
+            else datapack.buildAsZipInMemory(configs.getOutputPath(), overwrite, datapackOptions);
+        }
+        else {
+            datapack.buildAsFolder(configs.getOutputPath(), overwrite, datapackOptions);
+        }
+    }
+    void buildResourcePack(BuildMetrics metrics) throws IOException {
+        ResourcePack resourcePack = ResourcePack.createResourcePack(configs.getAssetFolderPath(), configs.getAssetPackFormat(), configs.getAssetPackName(), configs.getAssetPackDescription(), configs.getBuildVersion(), (configs.getAssetPackPackPngPath() != null) ? configs.getAssetPackPackPngPath() : configs.getGeneralPackPngPath(), (configs.getAssetPackReadMePath() != null) ? configs.getAssetPackReadMePath() : configs.getGeneralReadMePath(), (configs.getAssetPackLicensePath() != null) ? configs.getAssetPackLicensePath() : configs.getGeneralLicensePath(), metrics);
+        boolean overwrite = watch || configs.isAssetPackOverwriteOutput();
+
+        if (configs.isMultipleTargets()) {
+            if (configs.isAssetPackBuildZipped()) resourcePack.buildVariantsAsZip(configs.getOutputPath(), overwrite, resourcePackOptions, configs.getAssetPackFormats());
+            else resourcePack.buildVariantsAsFolder(configs.getOutputPath(), overwrite, resourcePackOptions, configs.getAssetPackFormats());
+        }
+        else if (configs.isAssetPackBuildZipped()) {
+            if (configs.isStreamZip()) resourcePack.buildAsZip(configs.getOutputPath(), overwrite, resourcePackOptions);
+            else resourcePack.buildAsZipInMemory(configs.getOutputPath(), overwrite, resourcePackOptions);
+        }
+        else resourcePack.buildAsFolder(configs.getOutputPath(), overwrite, resourcePackOptions);
+    }
+
+    // Per-file times are only kept when they end up in a report.
+    BuildMetrics newMetrics(String packName) {
+        return new BuildMetrics(packName, configs.getMetricsReportPath() != null ? configs.getMetricsSlowestFiles() : 0, configs.isJfrEvents());
+    }
+    void writeReport(List<Result> results) {
+        ArrayList<BuildMetrics> metrics = new ArrayList<>();
+        for (Result result : results) {
+            metrics.add(result.metrics);
+        }
+        try {
+            BuildMetrics.writeReport(configs.getMetricsReportPath(), metrics);
+        }
+        catch (IOException e) {
+            System.out.printf("Could not write the build metrics to %1$s: %2$s\n", configs.getMetricsReportPath(), e);
+        }
+    }
+
+    // A cache over its size limit only takes more disk space, so failing to trim it does not fail the build.
+    static void trimCache(BuildOptions options) {
+        if (options.getCache() == null) return;
+        try {
+            options.getCache().trim();
+        }
+        catch (IOException e) {
+            System.out.printf("Could not trim the cache at %1$s: %2$s\n", options.getCache().getFolder(), e);
+        }
+    }
+    static Result run(BuildMetrics metrics, PackBuild build) {
+        long start = System.nanoTime();
+        Exception error = null;
+        try {
+            build.run(metrics);
+        }
+        catch (Exception e) {
+            error = e;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        metrics.finish(millis, error);
+        return new Result(metrics.getPackName(), millis, error, metrics);
+    }
+    static Result get(Future<Result> result) throws InterruptedException {
+        try {
+            return result.get();
+        }
+        catch (ExecutionException e) {
+            // run() catches every exception, so only errors like OutOfMemoryError get here.
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    interface PackBuild {
+        void run(BuildMetrics metrics) throws IOException;
+    }
+
+    public static class Result {
+        String packName;
+        long millis;
+        Exception error;
+        BuildMetrics metrics;
+
+        public String getPackName() {
+            return packName;
+        }
+        public long getMillis() {
+            return millis;
+        }
+        public Exception getError() {
+            return error;
+        }
+        public BuildMetrics getMetrics() {
+            return metrics;
+        }
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        Result(String packName, long millis, Exception error, BuildMetrics metrics) {
+            this.packName = packName;
+            this.millis = millis;
+            this.error = error;
+            this.metrics = metrics;
+        }
+    }
+
+    public BuildPipeline(ProgramConfigs configs, BuildOptions datapackOptions, BuildOptions resourcePackOptions, boolean watch) {
+        this.configs = configs;
+        this.datapackOptions = datapackOptions;
+        this.resourcePackOptions = resourcePackOptions;
+        this.watch = watch;
+    }
+}
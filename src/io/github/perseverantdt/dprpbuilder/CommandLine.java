@@ -0,0 +1,163 @@
+package io.github.perseverantdt.dprpbuilder;
+
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.ProgramConfigs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+// Builds the packs without any window or network access, for build servers and scripts. Configs are read from the ini
+// file like usual, and any of its values can be overridden from the command line with --Section.key=value, or with
+// --key=value for the keys in [General].
+public class CommandLine {
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_BUILD_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_CONFIG = 3;
+
+    static final String USAGE = String.join("\n",
+        "Usage: java -jar DPRPBuilder.jar --headless [options] [--Section.key=value ...]",
+        "",
+        "Options:",
+        "  --config <file>         The build configuration file to use, also written --config=<file>. Defaults to",
+        "                          ./dprpbuilder.ini if it exists, or to the default configs otherwise.",
+        "  --watch                 Keep running and rebuild packs whenever their folders change.",
+        "  --help                  Show this message.",
+        "",
+        "Any value in the configuration file can be overridden, for example:",
+        "  --outputPath=./build --Datapack.buildZipped=no --ResourcePack.name=\"My Pack\"",
+        "",
+        "Exit codes: 0 if every pack was built, 1 if a build failed, 2 for invalid arguments and 3 if the configs could",
+        "not be read or there is nothing to build."
+    );
+
+    public static boolean isHeadless(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--headless")) return true;
+        }
+        return false;
+    }
+
+    public static int run(String[] args) {
+        Path configPath = null;
+        boolean watch = false;
+        LinkedHashMap<String, String> overrides = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--headless")) continue;
+            if (arg.equals("--watch")) {
+                watch = true;
+            }
+            else if (arg.equals("--help") || arg.equals("-h")) {
+                System.out.println(USAGE);
+                return EXIT_SUCCESS;
+            }
+            else if (arg.equals("--config")) {
+                if (i + 1 >= args.length) return usageError("--config needs a file.");
+                configPath = Path.of(args[++i]);
+            }
+            else if (arg.startsWith("--config=")) {
+                if (arg.length() == "--config=".length()) return usageError("--config needs a file.");
+                configPath = Path.of(arg.substring("--config=".length()));
+            }
+            else if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+                String key = arg.substring(2, arg.indexOf('='));
+                String section = "General";
+                int dot = key.indexOf('.');
+                if (dot >= 0) {
+                    section = getSectionName(key.substring(0, dot));
+                    if (section == null) return usageError("Unknown section in " + arg + ". Expected General, Datapack or ResourcePack.");
+                    key = key.substring(dot + 1);
+                }
+                // A misspelled key would otherwise be ignored, and the pack built with the wrong settings.
+                if (!ProgramConfigs.isKey(section, key)) return usageError("Unknown config key in " + arg + ": " + section + "." + key + ". Keys are case-sensitive.");
+                overrides.put(section + "." + key, arg.substring(arg.indexOf('=') + 1));
+            }
+            else {
+                return usageError("Unknown argument: " + arg);
+            }
+        }
+
+        ProgramConfigs configs;
+        try {
+            String defaultText;
+            try (InputStream defaultConfigs = Main.class.getResourceAsStream("/dprpbuilder.ini")) {
+                if (defaultConfigs == null) throw new IOException("Could not find the default configs.");
+                defaultText = new String(defaultConfigs.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            configs = ProgramConfigs.fromIniText(defaultText, "Default configs", new LinkedHashMap<>());
+
+            if (configPath == null && Files.exists(Main.configPath)) configPath = Main.configPath;
+            if (configPath != null) {
+                configs.replaceWith(ProgramConfigs.fromIniText(Files.readString(configPath), configPath.toString(), overrides));
+            }
+            else if (!overrides.isEmpty()) {
+                configs.replaceWith(ProgramConfigs.fromIniText(defaultText, "Command line", overrides));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("error: Could not read the build configs: " + e.getMessage());
+            return EXIT_CONFIG;
+        }
+
+        if (configs.getDataFolderPath() == null) System.err.println("warning: Could not find the specified data folder. Skipping datapack build.");
+        if (configs.getAssetFolderPath() == null) System.err.println("warning: Could not find the specified assets folder. Skipping resource pack build.");
+        if (configs.getDataFolderPath() == null && configs.getAssetFolderPath() == null) {
+            System.err.println("error: There is nothing to build.");
+            return EXIT_CONFIG;
+        }
+
+        ForkJoinPool compressionPool = new ForkJoinPool(configs.getCompressionThreads() > 0 ? configs.getCompressionThreads() : Runtime.getRuntime().availableProcessors());
+        BuildOptions datapackOptions = configs.createDatapackBuildOptions(compressionPool);
+        BuildOptions resourcePackOptions = configs.createAssetPackBuildOptions(compressionPool);
+        if (watch) {
+            datapackOptions = datapackOptions.withIncremental(true);
+            resourcePackOptions = resourcePackOptions.withIncremental(true);
+        }
+        BuildPipeline pipeline = new BuildPipeline(configs, datapackOptions, resourcePackOptions, watch);
+
+        boolean failed = false;
+        try {
+            for (BuildPipeline.Result result : pipeline.build(configs.getDataFolderPath() != null, configs.getAssetFolderPath() != null)) {
+                if (result.isSuccessful()) continue;
+
+                System.err.printf("error: An error occurred while trying to build the %1$s: %2$s%n", result.getPackName().toLowerCase(Locale.ROOT), result.getError());
+                result.getError().printStackTrace();
+                failed = true;
+            }
+        }
+        catch (InterruptedException e) {
+            return EXIT_BUILD_FAILED;
+        }
+
+        if (watch) {
+            Main.watch(configs, pipeline);
+            return EXIT_SUCCESS;
+        }
+        return failed ? EXIT_BUILD_FAILED : EXIT_SUCCESS;
+    }
+
+    static String getSectionName(String section) {
+        switch (section.toLowerCase(Locale.ROOT)) {
+            case "general":
+                return "General";
+            case "datapack":
+                return "Datapack";
+            case "resourcepack":
+                return "ResourcePack";
+            default:
+                return null;
+        }
+    }
+    static int usageError(String message) {
+        System.err.println("error: " + message);
+        System.err.println(USAGE);
+        return EXIT_USAGE;
+    }
+}
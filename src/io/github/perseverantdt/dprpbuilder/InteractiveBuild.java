@@ -0,0 +1,151 @@
+package io.github.perseverantdt.dprpbuilder;
+
+import com.github.zafarkhaja.semver.Version;
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.ProgramConfigs;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+// The default way of running the program, which checks for updates and reports problems in dialogs.
+class InteractiveBuild {
+    static final int UPDATE_CHECK_TIMEOUT_MILLIS = 5000;
+
+    static void run(String[] args) {
+        boolean watch = Arrays.asList(args).contains("--watch");
+        JFrame popup = new JFrame();
+        popup.setAlwaysOnTop(true);
+        try {
+            URLConnection connection = Main.versionUrl.openConnection();
+            connection.setConnectTimeout(UPDATE_CHECK_TIMEOUT_MILLIS);
+            connection.setReadTimeout(UPDATE_CHECK_TIMEOUT_MILLIS);
+            Scanner s = new Scanner(connection.getInputStream());
+
+            String latestVersionText = s.nextLine();
+            Version latestVersion = Version.valueOf(latestVersionText);
+
+            if (latestVersion.greaterThan(Main.programVersion)) {
+                int update = JOptionPane.showConfirmDialog(popup, "New version detected. Go to latest release for update?", "DPRPBuilder", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+
+                if (update == JOptionPane.YES_OPTION) {
+                    if (Desktop.isDesktopSupported()) {
+                        Desktop desktop = Desktop.getDesktop();
+                        try {
+                            desktop.browse(Main.releaseUrl.toURI());
+                        } catch (IOException | URISyntaxException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    else {
+                        String os = System.getProperty("os.name").toLowerCase();
+                        Runtime runtime = Runtime.getRuntime();
+
+                        if (os.contains("win")) {
+                            runtime.exec("rundll32 url.dll,FileProtocolHandler " + Main.releaseUrl.toString());
+                        }
+                        else if (os.contains("mac")) {
+                            runtime.exec("open " + Main.releaseUrl.toString());
+                        }
+                        else if (os.contains("nix") || os.contains("nux")) {
+                            runtime.exec("xdg-open " + Main.releaseUrl.toString());
+                        }
+                    }
+                    System.exit(0);
+                }
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(popup, "Could not get the latest version of the application.", "DPRPBuilder", JOptionPane.WARNING_MESSAGE);
+            e.printStackTrace();
+        }
+
+        if (Files.notExists(Main.configPath)) {
+            System.out.println("No build configs found. Creating build configs...");
+            try (InputStream defaultConfigs = Main.class.getResourceAsStream("/dprpbuilder.ini")) {
+                if (defaultConfigs == null) {
+                    JOptionPane.showMessageDialog(popup, "Could not find default configs. Please report this to Perseverant Determination.", "DPRPBuilder", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
+
+                Files.write(Main.configPath, defaultConfigs.readAllBytes());
+                JOptionPane.showMessageDialog(popup, "Build configurations created at " + Main.configPath + ". Please edit them before running the application again.", "DPRPBuilder", JOptionPane.INFORMATION_MESSAGE);
+                System.exit(0);
+            }
+            catch (IOException e) {
+                JOptionPane.showMessageDialog(popup, "An error occurred while trying to write default build configs.", "DPRPBuilder", JOptionPane.ERROR_MESSAGE);
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        ProgramConfigs configs = null;
+
+        try {
+            try (InputStream defaultConfigs = Main.class.getResourceAsStream("/dprpbuilder.ini")) {
+                if (defaultConfigs == null) {
+                    JOptionPane.showMessageDialog(popup, "Could not find default configs. Please report this to Perseverant Determination.", "DPRPBuilder", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
+
+                configs = ProgramConfigs.fromIniStream(defaultConfigs, "Default configs");
+            }
+
+            ProgramConfigs userConfigs = ProgramConfigs.fromIniFile(Main.configPath);
+            configs.replaceWith(userConfigs);
+        }
+        // Invalid values in the configs, like an unknown version or compression setting, are runtime exceptions.
+        catch (IOException | RuntimeException e) {
+            JOptionPane.showMessageDialog(popup, "An error occurred while trying to read build configuration files:\n" + e.getMessage(), "DPRPBuilder", JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        ForkJoinPool compressionPool = new ForkJoinPool(configs.getCompressionThreads() > 0 ? configs.getCompressionThreads() : Runtime.getRuntime().availableProcessors());
+
+        BuildOptions datapackOptions = configs.createDatapackBuildOptions(compressionPool);
+        BuildOptions resourcePackOptions = configs.createAssetPackBuildOptions(compressionPool);
+        if (watch) {
+            datapackOptions = datapackOptions.withIncremental(true);
+            resourcePackOptions = resourcePackOptions.withIncremental(true);
+        }
+        BuildPipeline pipeline = new BuildPipeline(configs, datapackOptions, resourcePackOptions, watch);
+
+        ArrayList<String> problems = new ArrayList<>();
+        if (configs.getDataFolderPath() == null) problems.add("Could not find the specified data folder. Skipping datapack build.");
+        if (configs.getAssetFolderPath() == null) problems.add("Could not find the specified assets folder. Skipping resource pack build.");
+        boolean failed = false;
+        try {
+            for (BuildPipeline.Result result : pipeline.build(configs.getDataFolderPath() != null, configs.getAssetFolderPath() != null)) {
+                if (result.isSuccessful()) continue;
+
+                // TODO: Implement an output cleaning algorithm if, for some reason, building to folder fails.
+                problems.add(String.format("An error occurred while trying to build the %1$s: %2$s", result.getPackName().toLowerCase(), result.getError()));
+                result.getError().printStackTrace();
+                failed = true;
+            }
+        }
+        catch (InterruptedException e) {
+            System.exit(1);
+        }
+        if (!problems.isEmpty()) {
+            JOptionPane.showMessageDialog(popup, String.join("\n", problems), "DPRPBuilder", failed ? JOptionPane.ERROR_MESSAGE : JOptionPane.WARNING_MESSAGE);
+        }
+        if (failed && !watch) System.exit(1);
+
+        if (watch && (configs.getDataFolderPath() != null || configs.getAssetFolderPath() != null)) {
+            popup.dispose();
+            Main.watch(configs, pipeline);
+        }
+
+        popup.dispose();
+        System.exit(0);
+    }
+}
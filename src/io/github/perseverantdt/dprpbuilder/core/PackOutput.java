@@ -0,0 +1,285 @@
+package io.github.perseverantdt.dprpbuilder.core;
+
+import com.github.zafarkhaja.semver.Version;
+import io.github.perseverantdt.dprpbuilder.util.BuildManifest;
+import io.github.perseverantdt.dprpbuilder.util.BuildMetrics;
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.InputOutput;
+import io.github.perseverantdt.dprpbuilder.util.PackEntry;
+import io.github.perseverantdt.dprpbuilder.util.PackFolderWriter;
+import io.github.perseverantdt.dprpbuilder.util.PackFormat;
+import io.github.perseverantdt.dprpbuilder.util.PackMcmeta;
+import io.github.perseverantdt.dprpbuilder.util.ParallelZipWriter;
+import io.github.perseverantdt.dprpbuilder.util.ZipArchiveReader;
+import io.github.perseverantdt.dprpbuilder.util.ZipArchiveWriter;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Writes the files of a datapack or resource pack as a zip or a folder, or as one of them for every target version. Both
+// kinds of pack are written the same way, apart from which files they have and resource packs being split into parts.
+class PackOutput {
+    String label;
+    String name;
+    String description;
+    PackFormat format;
+    Version version;
+    Path packpngPath;
+    Path readmePath;
+    Path licensePath;
+    Splitter splitter;
+    BuildMetrics metrics;
+
+    void buildAsZipInMemory(Path outputPath, boolean overwrite, BuildOptions options, List<PackEntry> files) throws IOException {
+        Path zipPath = getZipPath(outputPath, overwrite, getPackName(null));
+        ByteArrayOutputStream packInMemory = new ByteArrayOutputStream();
+        BuildManifest manifest = writeZip(Channels.newChannel(packInMemory), zipPath, options, withPackMcmeta(files, format, options));
+
+        BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+        Files.deleteIfExists(zipPath);
+        Files.write(zipPath, packInMemory.toByteArray());
+        if (overwrite && options.isIncremental()) manifest.save(BuildManifest.getSidecarPath(zipPath));
+        finalize.end(0, 0, 0);
+        System.out.printf("%1$s created at %2$s (SHA-1 %3$s).\n", label, zipPath.toAbsolutePath(), metrics.getSha1());
+    }
+    void buildAsZip(Path outputPath, boolean overwrite, BuildOptions options, List<PackEntry> files) throws IOException {
+        Path zipPath = getZipPath(outputPath, overwrite, getPackName(null));
+        Path tempPath = InputOutput.getTempSibling(zipPath);
+        try {
+            BuildManifest manifest = writeZip(FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), zipPath, options, withPackMcmeta(files, format, options));
+            if (splitter != null && splitter.split(tempPath, outputPath, overwrite, getPackName(null), options)) return;
+            BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+            InputOutput.moveAtomically(tempPath, zipPath);
+            if (overwrite && options.isIncremental()) manifest.save(BuildManifest.getSidecarPath(zipPath));
+            finalize.end(0, 0, 0);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        System.out.printf("%1$s created at %2$s (SHA-1 %3$s).\n", label, zipPath.toAbsolutePath(), metrics.getSha1());
+    }
+    // Builds a zip for every target version in one pass. Only pack.mcmeta differs between them, so every other file is
+    // read and compressed once for all of them. Previous builds are not reused, since each was made for one version.
+    void buildVariantsAsZip(Path outputPath, boolean overwrite, BuildOptions options, Map<Version, PackFormat> formats, List<PackEntry> files) throws IOException {
+        ArrayList<Path> zipPaths = new ArrayList<>();
+        ArrayList<Path> tempPaths = new ArrayList<>();
+        ArrayList<ZipArchiveWriter> zips = new ArrayList<>();
+        ArrayList<List<PackEntry>> variants = new ArrayList<>();
+        try {
+            for (Map.Entry<Version, PackFormat> format : formats.entrySet()) {
+                Path zipPath = getZipPath(outputPath, overwrite, getPackName(format.getKey()));
+                Path tempPath = InputOutput.getTempSibling(zipPath);
+                zipPaths.add(zipPath);
+                tempPaths.add(tempPath);
+                zips.add(new ZipArchiveWriter(FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+                variants.add(withPackMcmeta(files, format.getValue(), options));
+            }
+            writeZips(zips, variants, options, null, null);
+
+            int i = 0;
+            for (Version target : formats.keySet()) {
+                zips.get(i).close();
+                if (splitter != null && splitter.split(tempPaths.get(i), outputPath, overwrite, getPackName(target), options)) {
+                    zipPaths.set(i, null);
+                }
+                else {
+                    BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+                    InputOutput.moveAtomically(tempPaths.get(i), zipPaths.get(i));
+                    finalize.end(0, 0, 0);
+                }
+                i++;
+            }
+        }
+        finally {
+            for (ZipArchiveWriter zip : zips) {
+                try {
+                    zip.close();
+                }
+                catch (IOException | IllegalStateException ignored) {
+                    // The build already failed, and the partly written zip is deleted below.
+                }
+            }
+            for (Path tempPath : tempPaths) {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        int i = 0;
+        for (Version target : formats.keySet()) {
+            if (zipPaths.get(i) != null) System.out.printf("%1$s for Minecraft %2$s created at %3$s (SHA-1 %4$s).\n", label, target, zipPaths.get(i).toAbsolutePath(), InputOutput.toHex(zips.get(i).getSha1()));
+            i++;
+        }
+    }
+    void buildAsFolder(Path outputPath, boolean overwrite, BuildOptions options, List<PackEntry> files) throws IOException {
+        writeFolder(outputPath, overwrite, options, getPackName(null), withPackMcmeta(files, format, options));
+    }
+    // Builds a folder for every target version. The files are only transformed once for all of them.
+    void buildVariantsAsFolder(Path outputPath, boolean overwrite, BuildOptions options, Map<Version, PackFormat> formats, List<PackEntry> files) throws IOException {
+        for (Map.Entry<Version, PackFormat> format : formats.entrySet()) {
+            writeFolder(outputPath, overwrite, options, getPackName(format.getKey()), withPackMcmeta(files, format.getValue(), options));
+        }
+    }
+    void writeFolder(Path outputPath, boolean overwrite, BuildOptions options, String folderName, List<PackEntry> entries) throws IOException {
+        if (Files.notExists(outputPath)) {
+            Files.createDirectories(outputPath.toAbsolutePath());
+        }
+
+        Path finalFolderName;
+        BuildManifest previous = null;
+        if (overwrite) {
+            finalFolderName = Path.of(outputPath.toString(), folderName);
+            if (options.isIncremental()) previous = BuildManifest.load(finalFolderName.resolve(BuildManifest.FILE_NAME), options.describe(false));
+            if (previous == null && Files.exists(finalFolderName)) {
+                BuildMetrics.Span clear = metrics.begin(BuildMetrics.Phase.WRITE);
+                InputOutput.deleteContents(finalFolderName);
+                clear.end(0, 0, 0);
+            }
+            else if (Files.notExists(finalFolderName)) {
+                Files.createDirectory(finalFolderName);
+            }
+        }
+        else {
+            int iteration = 0;
+            while (Files.exists(Path.of(outputPath.toString(), folderName + (iteration != 0 ? "(" + iteration + ")" : "")))) {
+                iteration++;
+            }
+
+            finalFolderName = Path.of(outputPath.toString(), folderName + (iteration != 0 ? "(" + iteration + ")" : ""));
+            Files.createDirectory(finalFolderName);
+        }
+
+        PackFolderWriter writer = new PackFolderWriter(finalFolderName, options.describe(false), options.isHardLinks(), overwrite && options.isIncremental(), metrics);
+        writer.write(entries, previous);
+        metrics.setTotals(entries, writer.getWrittenBytes());
+
+        if (previous != null) System.out.printf("%1$s updated at %2$s: %3$d files written, %4$d unchanged, %5$d removed.\n", label, finalFolderName.toAbsolutePath(), writer.getWritten(), writer.getUnchanged(), writer.getRemoved());
+        else System.out.printf("%1$s created at %2$s.\n", label, finalFolderName.toAbsolutePath());
+    }
+
+    // The pack.png, README and LICENSE of the pack, if it has them.
+    ArrayList<PackEntry> getPackFiles() throws IOException {
+        ArrayList<PackEntry> entries = new ArrayList<>();
+        if (packpngPath != null) entries.add(PackEntry.ofFile("pack.png", packpngPath));
+        if (readmePath != null) entries.add(PackEntry.ofFile("README" + ((!FilenameUtils.getExtension(readmePath.toString()).equals("")) ? "." + FilenameUtils.getExtension(readmePath.toString()) : ""), readmePath));
+        if (licensePath != null) entries.add(PackEntry.ofFile("LICENSE" + ((!FilenameUtils.getExtension(licensePath.toString()).equals("")) ? "." + FilenameUtils.getExtension(licensePath.toString()) : ""), licensePath));
+        return entries;
+    }
+    List<PackEntry> withPackMcmeta(List<PackEntry> files, PackFormat format, BuildOptions options) {
+        ArrayList<PackEntry> entries = new ArrayList<>(files.size() + 1);
+        entries.add(PackEntry.ofBytes("pack.mcmeta", PackMcmeta.write(format, description, options.isMinifyJson())));
+        entries.addAll(files);
+        return entries;
+    }
+    // Writes the zip to the channel. If the zip at zipPath was built incrementally before, entries whose source did not
+    // change are copied from it instead of being compressed again.
+    BuildManifest writeZip(WritableByteChannel channel, Path zipPath, BuildOptions options, List<PackEntry> entries) throws IOException {
+        String settings = options.describe(true);
+        BuildManifest previous = null;
+        ZipArchiveReader previousZip = null;
+        if (options.isIncremental() && Files.exists(zipPath)) {
+            previous = BuildManifest.load(BuildManifest.getSidecarPath(zipPath), settings);
+            if (previous != null) {
+                try {
+                    previousZip = ZipArchiveReader.open(zipPath);
+                }
+                catch (IOException e) {
+                    System.out.printf("Could not read the previous build at %1$s. Rebuilding everything.\n", zipPath);
+                    previous = null;
+                }
+            }
+        }
+
+        try (ZipArchiveWriter zip = new ZipArchiveWriter(channel)) {
+            return writeZips(List.of(zip), List.of(entries), options, previous, previousZip).get(0);
+        }
+        finally {
+            if (previousZip != null) previousZip.close();
+        }
+    }
+    // Writes each variant to its zip and finishes them, leaving them open. The metrics are those of the first zip, apart
+    // from the bytes written, which count every zip.
+    List<BuildManifest> writeZips(List<ZipArchiveWriter> zips, List<List<PackEntry>> variants, BuildOptions options, BuildManifest previous, ZipArchiveReader previousZip) throws IOException {
+        if (options.isReproducible()) {
+            ArrayList<List<PackEntry>> sorted = new ArrayList<>();
+            for (List<PackEntry> entries : variants) {
+                ArrayList<PackEntry> sortedEntries = new ArrayList<>(entries);
+                sortedEntries.sort(Comparator.comparing(PackEntry::getName));
+                sorted.add(sortedEntries);
+            }
+            variants = sorted;
+            for (ZipArchiveWriter zip : zips) {
+                zip.setFixedTime(ZipArchiveWriter.getReproducibleTime());
+            }
+        }
+        List<BuildManifest> manifests = new ParallelZipWriter(options.getCompressionPool(), options.getCompressionPolicy(), options.isCacheZipEntries() ? options.getCache() : null, options.getSourceReader(), metrics).write(zips, variants, options.describe(true), previous, previousZip);
+
+        BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+        long centralDirectoryBytes = 0;
+        long bytesOut = 0;
+        for (ZipArchiveWriter zip : zips) {
+            long centralDirectoryOffset = zip.getOffset();
+            zip.finish();
+            centralDirectoryBytes += zip.getOffset() - centralDirectoryOffset;
+            bytesOut += zip.getOffset();
+        }
+        finalize.end(0, 0, centralDirectoryBytes);
+        metrics.setTotals(variants.get(0), bytesOut);
+        metrics.setSha1(InputOutput.toHex(zips.get(0).getSha1()));
+        return manifests;
+    }
+    // Packs built for several target versions have the version in their name.
+    String getPackName(Version target) {
+        StringBuilder packName = new StringBuilder();
+        packName.append(name);
+        if (version != null) packName.append(" v").append(version);
+        if (target != null) packName.append(" (MC ").append(target).append(")");
+        return packName.toString();
+    }
+    static Path getZipPath(Path outputPath, boolean overwrite, String zipName) throws IOException {
+        if (Files.notExists(outputPath)) {
+            Files.createDirectories(outputPath.toAbsolutePath());
+        }
+        if (overwrite) {
+            return Path.of(outputPath.toString(), zipName + ".zip");
+        }
+
+        int iteration = 0;
+        while (Files.exists(Path.of(outputPath.toString(), zipName + (iteration != 0 ? "(" + iteration + ")" : "") + ".zip"))) {
+            iteration++;
+        }
+        return Path.of(outputPath.toString(), zipName + (iteration != 0 ? "(" + iteration + ")" : "") + ".zip");
+    }
+
+    // Splits the finished zip of a pack into parts instead of it being moved to its place.
+    interface Splitter {
+        // Returns whether the zip at zipPath was split.
+        boolean split(Path zipPath, Path outputPath, boolean overwrite, String packName, BuildOptions options) throws IOException;
+    }
+
+    // The label starts the messages about the pack, like "Datapack created at ...". Packs without a splitter are never
+    // split.
+    PackOutput(String label, String name, String description, PackFormat format, Version version, Path packpngPath, Path readmePath, Path licensePath, Splitter splitter, BuildMetrics metrics) {
+        this.label = label;
+        this.name = name;
+        this.description = description;
+        this.format = format;
+        this.version = version;
+        this.packpngPath = packpngPath;
+        this.readmePath = readmePath;
+        this.licensePath = licensePath;
+        this.splitter = splitter;
+        this.metrics = metrics;
+    }
+}
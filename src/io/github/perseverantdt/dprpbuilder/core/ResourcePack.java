@@ -1,39 +1,33 @@
 package io.github.perseverantdt.dprpbuilder.core;
 
 import com.github.zafarkhaja.semver.Version;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import io.github.perseverantdt.dprpbuilder.util.AssetDeduplicator;
+import io.github.perseverantdt.dprpbuilder.util.AssetPruner;
+import io.github.perseverantdt.dprpbuilder.util.BuildManifest;
+import io.github.perseverantdt.dprpbuilder.util.BuildMetrics;
+import io.github.perseverantdt.dprpbuilder.util.BuildOptions;
+import io.github.perseverantdt.dprpbuilder.util.FileScanner;
 import io.github.perseverantdt.dprpbuilder.util.InputOutput;
-import io.github.perseverantdt.dprpbuilder.util.PackFormatEntry;
-import org.apache.commons.io.FilenameUtils;
+import io.github.perseverantdt.dprpbuilder.util.JsonMinifier;
+import io.github.perseverantdt.dprpbuilder.util.PackEntry;
+import io.github.perseverantdt.dprpbuilder.util.PackFormat;
+import io.github.perseverantdt.dprpbuilder.util.PackSplitter;
+import io.github.perseverantdt.dprpbuilder.util.PngOptimizer;
+import io.github.perseverantdt.dprpbuilder.util.ZipArchiveReader;
+import io.github.perseverantdt.dprpbuilder.util.ZipArchiveWriter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.List;
+import java.util.Map;
 
 public class ResourcePack {
-    static final PackFormatEntry[] rpFormats = new PackFormatEntry[]{
-        new PackFormatEntry(1, "1.6.1 - 1.8.9"),
-        new PackFormatEntry(2, "1.9 - 1.10.2"),
-        new PackFormatEntry(3, "1.11 - 1.12.2"),
-        new PackFormatEntry(4, "1.13 - 1.14.4"),
-        new PackFormatEntry(5, "1.15 - 1.16.1"),
-        new PackFormatEntry(6, "1.16.2 - 1.16.5"),
-        new PackFormatEntry(7, "1.17.x"),
-        new PackFormatEntry(8, "1.18.x"),
-        new PackFormatEntry(9, "1.19.x")
-    };
     // TODO: Add support for files used by MC mods, especially Optifine.
-    static final String[] validExtensions = new String[]{
+    static final FileScanner scanner = FileScanner.forExtensions(
         "json",
         "mcmeta",
         "obj",
@@ -42,189 +36,171 @@ public class ResourcePack {
         "vsh",
         "nbt",
         "ttf",
-        "glsl"
-    };
+        "glsl",
+        "png"
+    );
 
     String name;
     String description;
-    int format;
+    PackFormat format;
     Version version;
     Path assetFolderPath;
-    Path[] files;
-    Path packpngPath;
-    Path readmePath;
-    Path licensePath;
+    List<PackEntry> files;
+    BuildMetrics metrics;
+    PackOutput output;
 
-    public static ResourcePack createResourcePack(Path assetFolderPath, Version targetVersion, String name, String description, Version buildVersion, Path packpngPath, Path readmePath, Path licensePath) {
-        Path[] files = InputOutput.getFiles(assetFolderPath, true);
-        ArrayList<Path> cleanedFiles = new ArrayList<>();
-        for (Path file : files) {
-            if (Arrays.stream(validExtensions).anyMatch(ext -> FilenameUtils.getExtension(file.toString()).equals(ext))) {
-                cleanedFiles.add(file);
-            }
-        }
-        files = cleanedFiles.toArray(new Path[0]);
-        int format = 10;
-        for (PackFormatEntry rpFormat : rpFormats) {
-            if (rpFormat.includes(targetVersion)) {
-                format = rpFormat.getFormat();
-            }
-        }
+    public static ResourcePack createResourcePack(Path assetFolderPath, PackFormat format, String name, String description, Version buildVersion, Path packpngPath, Path readmePath, Path licensePath, BuildMetrics metrics) throws IOException {
+        BuildMetrics.Span scan = metrics.begin(BuildMetrics.Phase.SCAN);
+        List<PackEntry> files = scanner.scan(assetFolderPath, "assets/");
+        scan.end(files.size(), 0, 0);
 
-        return new ResourcePack(name, description, format, buildVersion, assetFolderPath, files, packpngPath, readmePath, licensePath);
+        return new ResourcePack(name, description, format, buildVersion, assetFolderPath, files, packpngPath, readmePath, licensePath, metrics);
+    }
+    public static FileScanner getScanner() {
+        return scanner;
     }
 
-    public void buildAsZipInMemory(Path outputPath, boolean overwrite) throws IOException {
-        ByteArrayOutputStream resourcePackInMemory = new ByteArrayOutputStream();
-        try (ZipOutputStream resourcePackZip = new ZipOutputStream(resourcePackInMemory)) {
-            JsonObject pack = new JsonObject();
-            pack.add("pack_format", new JsonPrimitive(format));
-            pack.add("description", new JsonPrimitive(description));
-            JsonObject mcmeta = new JsonObject();
-            mcmeta.add("pack", pack);
-
-            Gson builder = new GsonBuilder().setPrettyPrinting().create();
-
-            ZipEntry packmcmeta = new ZipEntry("pack.mcmeta");
-            resourcePackZip.putNextEntry(packmcmeta);
-            resourcePackZip.write(builder.toJson(mcmeta).getBytes(StandardCharsets.UTF_8));
-            resourcePackZip.closeEntry();
-
-            if (packpngPath != null) {
-                ZipEntry packpng = new ZipEntry("pack.png");
-                resourcePackZip.putNextEntry(packpng);
-                resourcePackZip.write(Files.readAllBytes(packpngPath));
-                resourcePackZip.closeEntry();
-            }
-            if (readmePath != null) {
-                ZipEntry readme = new ZipEntry("README" + ((!FilenameUtils.getExtension(readmePath.toString()).equals("")) ? "." + FilenameUtils.getExtension(readmePath.toString()) : ""));
-                resourcePackZip.putNextEntry(readme);
-                resourcePackZip.write(Files.readAllBytes(readmePath));
-                resourcePackZip.closeEntry();
-            }
-            if (licensePath != null) {
-                ZipEntry license = new ZipEntry("LICENSE" + ((!FilenameUtils.getExtension(licensePath.toString()).equals("")) ? "." + FilenameUtils.getExtension(licensePath.toString()) : ""));
-                resourcePackZip.putNextEntry(license);
-                resourcePackZip.write(Files.readAllBytes(licensePath));
-                resourcePackZip.closeEntry();
-            }
-
-            for (Path fileToAdd : files) {
-                if (Files.notExists(fileToAdd)) continue;
-
-                String entryName = fileToAdd.toAbsolutePath().toString();
-                entryName = entryName.replace(assetFolderPath.toString(), "assets").replace(File.separatorChar, '/');
-                ZipEntry fileEntry = new ZipEntry(entryName);
-                resourcePackZip.putNextEntry(fileEntry);
-                resourcePackZip.write(Files.readAllBytes(fileToAdd));
-                resourcePackZip.closeEntry();
-            }
+    public void buildAsZipInMemory(Path outputPath, boolean overwrite, BuildOptions options) throws IOException {
+        // Parts are copied from a whole zip, which has to be a file to be read back.
+        if (options.getMaxPackSize() > 0) {
+            buildAsZip(outputPath, overwrite, options);
+            return;
         }
 
-        if (Files.notExists(outputPath)) {
-            Files.createDirectories(outputPath.toAbsolutePath());
-        }
-        StringBuilder _zipName = new StringBuilder();
-        _zipName.append(name);
-        if (version != null) {
-            _zipName.append(" v").append(version);
-        }
+        output.buildAsZipInMemory(outputPath, overwrite, options, getFiles(options));
+    }
+    public void buildAsZip(Path outputPath, boolean overwrite, BuildOptions options) throws IOException {
+        output.buildAsZip(outputPath, overwrite, options, getFiles(options));
+    }
+    public void buildVariantsAsZip(Path outputPath, boolean overwrite, BuildOptions options, Map<Version, PackFormat> formats) throws IOException {
+        output.buildVariantsAsZip(outputPath, overwrite, options, formats, getFiles(options));
+    }
+    public void buildAsFolder(Path outputPath, boolean overwrite, BuildOptions options) throws IOException {
+        output.buildAsFolder(outputPath, overwrite, options, getFiles(options));
+    }
+    public void buildVariantsAsFolder(Path outputPath, boolean overwrite, BuildOptions options, Map<Version, PackFormat> formats) throws IOException {
+        output.buildVariantsAsFolder(outputPath, overwrite, options, formats, getFiles(options));
+    }
 
-        String zipName = _zipName.toString();
-        Path zipPath;
-        if (overwrite) {
-            zipPath = Path.of(outputPath.toString(), zipName + ".zip");
-            Files.deleteIfExists(zipPath);
+    // Every file but pack.mcmeta, which is the only one that differs between the packs built for each target version.
+    List<PackEntry> getFiles(BuildOptions options) throws IOException {
+        ArrayList<PackEntry> entries = output.getPackFiles();
+        entries.addAll(files);
+
+        List<PackEntry> transformed = entries;
+        // Unused files are left out first, so that they are not minified or optimized for nothing.
+        if (options.isPruneUnused()) transformed = prune(transformed, options);
+        if (options.isDeduplicate()) {
+            AssetDeduplicator deduplicator = new AssetDeduplicator(metrics);
+            transformed = deduplicator.deduplicate(transformed, options.getCompressionPool());
+            System.out.printf("Left out %1$d duplicate textures and models of the resource pack (%2$d KB) and rewrote the references in %3$d files.\n", deduplicator.getRemoved().size(), deduplicator.getRemovedBytes() / 1024, deduplicator.getRewrittenFiles());
         }
-        else {
-            int iteration = 0;
-            while (Files.exists(Path.of(outputPath.toString(), zipName + (iteration != 0 ? "(" + iteration + ")" : "") + ".zip"))) {
-                iteration++;
+        if (options.isMinifyJson()) transformed = JsonMinifier.minify(transformed, options.getCompressionPool(), metrics);
+        if (options.isOptimizePng()) transformed = new PngOptimizer(options.getCache(), metrics).optimize(transformed, options.getCompressionPool());
+        return transformed;
+    }
+    List<PackEntry> prune(List<PackEntry> entries, BuildOptions options) throws IOException {
+        AssetPruner pruner = new AssetPruner(options.getPruneRoots(), metrics);
+        List<PackEntry> pruned = pruner.prune(entries, options.getCompressionPool());
+        System.out.printf("Left out %1$d unused files of the resource pack (%2$d KB).\n", pruner.getRemoved().size(), pruner.getRemovedBytes() / 1024);
+        if (options.getPruneReportPath() != null) {
+            try {
+                pruner.writeReport(options.getPruneReportPath(), output.getPackName(null));
+            }
+            catch (IOException e) {
+                System.out.printf("Could not write the list of unused files to %1$s: %2$s\n", options.getPruneReportPath(), e);
             }
-
-            zipPath = Path.of(outputPath.toString(), zipName + (iteration != 0 ? "(" + iteration + ")" : "") + ".zip");
         }
-
-        Files.write(zipPath, resourcePackInMemory.toByteArray());
-        System.out.printf("Resource pack created at %1$s.\n", zipPath.toAbsolutePath());
+        return pruned;
     }
-    public void buildAsFolder(Path outputPath, boolean overwrite) throws IOException {
-        if (Files.notExists(outputPath)) {
-            Files.createDirectories(outputPath.toAbsolutePath());
-        }
-
-        StringBuilder _folderName = new StringBuilder();
-        _folderName.append(name);
-        if (version != null) _folderName.append(" v").append(version);
-        String folderName = _folderName.toString();
-
-        Path finalFolderName;
-        if (overwrite) {
-            finalFolderName = Path.of(outputPath.toString(), folderName);
-            if (Files.exists(finalFolderName)) {
-                Path[] filesInFolder = InputOutput.getFiles(finalFolderName, true);
-                Path[] foldersInFolder = InputOutput.getFolders(finalFolderName, true);
-
-                for (Path file : filesInFolder) {
-                    Files.deleteIfExists(file);
+    // Splits the finished zip at zipPath into parts if it is larger than maxPackSize, and returns whether it did. The
+    // parts are copied from it as they are, so nothing is compressed again.
+    boolean split(Path zipPath, Path outputPath, boolean overwrite, String packName, BuildOptions options) throws IOException {
+        if (options.getMaxPackSize() <= 0) return false;
+
+        List<List<ZipArchiveReader.Entry>> parts;
+        ArrayList<Path> partPaths = new ArrayList<>();
+        ArrayList<Path> tempPaths = new ArrayList<>();
+        ArrayList<ZipArchiveWriter> zips = new ArrayList<>();
+        try (ZipArchiveReader zip = ZipArchiveReader.open(zipPath)) {
+            if (Files.size(zipPath) <= options.getMaxPackSize()) parts = List.of(zip.getEntries());
+            else parts = new PackSplitter(options.getMaxPackSize()).split(zip.getEntries());
+            if (overwrite) deleteStaleOutputs(outputPath, packName, parts.size());
+            if (parts.size() == 1) return false;
+
+            try {
+                BuildMetrics.Span write = metrics.begin(BuildMetrics.Phase.WRITE);
+                long bytesIn = 0;
+                long bytesOut = 0;
+                for (List<ZipArchiveReader.Entry> part : parts) {
+                    Path partPath = PackOutput.getZipPath(outputPath, overwrite, packName + " part " + (partPaths.size() + 1));
+                    Path tempPath = InputOutput.getTempSibling(partPath);
+                    partPaths.add(partPath);
+                    tempPaths.add(tempPath);
+                    ZipArchiveWriter partZip = new ZipArchiveWriter(FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+                    zips.add(partZip);
+                    if (options.isReproducible()) partZip.setFixedTime(ZipArchiveWriter.getReproducibleTime());
+                    for (ZipArchiveReader.Entry entry : part) {
+                        zip.copyEntry(entry, partZip, entry.getTime());
+                        bytesIn += entry.getSize();
+                    }
+                    partZip.close();
+                    bytesOut += partZip.getOffset();
                 }
-                for (Path folder : foldersInFolder) {
-                    Files.deleteIfExists(folder);
+                write.end(parts.size(), bytesIn, bytesOut);
+
+                BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+                for (int i = 0; i < parts.size(); i++) {
+                    InputOutput.moveAtomically(tempPaths.get(i), partPaths.get(i));
                 }
+                PackSplitter.writeManifest(outputPath.resolve(packName + " parts.json"), packName, options.isReproducible() ? ZipArchiveWriter.getReproducibleTime() : System.currentTimeMillis(), parts, partPaths, zips);
+                finalize.end(0, 0, 0);
             }
-            else {
-                Files.createDirectory(finalFolderName);
+            finally {
+                for (ZipArchiveWriter partZip : zips) {
+                    try {
+                        partZip.close();
+                    }
+                    catch (IOException | IllegalStateException ignored) {
+                        // The build already failed, and the partly written part is deleted below.
+                    }
+                }
+                for (Path tempPath : tempPaths) {
+                    Files.deleteIfExists(tempPath);
+                }
             }
         }
-        else {
-            int iteration = 0;
-            while (Files.exists(Path.of(outputPath.toString(), folderName + (iteration != 0 ? "(" + iteration + ")" : "")))) {
-                iteration++;
-            }
 
-            finalFolderName = Path.of(outputPath.toString(), folderName + (iteration != 0 ? "(" + iteration + ")" : ""));
-            Files.createDirectory(finalFolderName);
+        System.out.printf("Resource pack split into %1$d parts of at most %2$d MB:\n", parts.size(), options.getMaxPackSize() / 1024 / 1024);
+        for (int i = 0; i < parts.size(); i++) {
+            System.out.printf("  %1$s (%2$d KB, SHA-1 %3$s)\n", partPaths.get(i).toAbsolutePath(), zips.get(i).getOffset() / 1024, InputOutput.toHex(zips.get(i).getSha1()));
         }
-
-        Gson builder = new GsonBuilder().setPrettyPrinting().create();
-
-        JsonObject pack = new JsonObject();
-        pack.add("pack_format", new JsonPrimitive(format));
-        pack.add("description", new JsonPrimitive(description));
-        JsonObject mcmeta = new JsonObject();
-        mcmeta.add("pack", pack);
-
-        Files.writeString(Path.of(finalFolderName.toString(), "pack.mcmeta"), builder.toJson(mcmeta));
-
-        if (packpngPath != null)
-            Files.write(Path.of(finalFolderName.toString(), "pack.png"), Files.readAllBytes(packpngPath));
-        if (readmePath != null)
-            Files.write(Path.of(finalFolderName.toString(), "README" + (!FilenameUtils.getExtension(readmePath.toString()).equals("") ? "." + FilenameUtils.getExtension(readmePath.toString()) : "")), Files.readAllBytes(readmePath));
-        if (licensePath != null)
-            Files.write(Path.of(finalFolderName.toString(), "LICENSE" + (!FilenameUtils.getExtension(licensePath.toString()).equals("") ? "." + FilenameUtils.getExtension(licensePath.toString()) : "")), Files.readAllBytes(licensePath));
-
-        for (Path fileToAdd : files) {
-            String filePath = fileToAdd.toAbsolutePath().toString().replace(assetFolderPath.toAbsolutePath().toString(), "");
-            Path outPath = Path.of(finalFolderName.toString(), "assets", filePath);
-
-            if (Files.notExists(outPath.getParent())) {
-                Files.createDirectories(outPath.getParent().toAbsolutePath());
-            }
-            Files.write(outPath, Files.readAllBytes(fileToAdd));
+        return true;
+    }
+    // Deletes what a previous build left that this one does not replace: the parts after the last one, and the whole zip
+    // if the pack is split now.
+    void deleteStaleOutputs(Path outputPath, String packName, int partCount) throws IOException {
+        int first = partCount > 1 ? partCount + 1 : 1;
+        for (int i = first; Files.exists(outputPath.resolve(packName + " part " + i + ".zip")); i++) {
+            Files.delete(outputPath.resolve(packName + " part " + i + ".zip"));
+        }
+        if (partCount == 1) {
+            Files.deleteIfExists(outputPath.resolve(packName + " parts.json"));
+        }
+        else {
+            Files.deleteIfExists(outputPath.resolve(packName + ".zip"));
+            Files.deleteIfExists(BuildManifest.getSidecarPath(outputPath.resolve(packName + ".zip")));
         }
-
-        System.out.printf("Resource Pack created at %1$s.\n", finalFolderName.toAbsolutePath());
     }
 
-    ResourcePack(String name, String description, int format, Version version, Path assetFolderPath, Path[] files, Path packpngPath, Path readmePath, Path licensePath) {
+    ResourcePack(String name, String description, PackFormat format, Version version, Path assetFolderPath, List<PackEntry> files, Path packpngPath, Path readmePath, Path licensePath, BuildMetrics metrics) {
         this.name = name;
         this.description = description;
         this.format = format;
         this.version = version;
         this.assetFolderPath = assetFolderPath;
         this.files = files;
-        this.packpngPath = packpngPath;
-        this.readmePath = readmePath;
-        this.licensePath = licensePath;
+        this.metrics = metrics;
+        this.output = new PackOutput("Resource pack", name, description, format, version, packpngPath, readmePath, licensePath, this::split, metrics);
     }
 }
@@ -0,0 +1,287 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Keeps one copy of the textures and models of a resource pack that are the same under different names. Textures are
+// compared byte for byte, along with their .mcmeta file, and models by their JSON once their textures were replaced.
+// References to a copy in models, blockstates and item definitions are changed to the kept file, which is the one in
+// the minecraft namespace or else the first by name. Copies in the minecraft namespace, copies that nothing refers to
+// and copies named by any other file, like atlases or fonts, are kept, since the game or the server may load them by
+// name.
+public class AssetDeduplicator {
+    BuildMetrics metrics;
+    ArrayList<PackEntry> removed = new ArrayList<>();
+    long removedBytes;
+    int rewrittenFiles;
+
+    public List<PackEntry> getRemoved() {
+        return removed;
+    }
+    public long getRemovedBytes() {
+        return removedBytes;
+    }
+    public int getRewrittenFiles() {
+        return rewrittenFiles;
+    }
+
+    // Hashes every texture and reads every JSON file of the pack on the pool, then replaces the copies.
+    public List<PackEntry> deduplicate(List<PackEntry> entries, ForkJoinPool pool) throws IOException {
+        HashMap<String, PackEntry> byName = new HashMap<>();
+        for (PackEntry entry : entries) {
+            byName.put(entry.getName(), entry);
+        }
+
+        LinkedHashMap<String, ForkJoinTask<String>> hashTasks = new LinkedHashMap<>();
+        LinkedHashMap<String, ForkJoinTask<JsonElement>> jsonTasks = new LinkedHashMap<>();
+        for (PackEntry entry : entries) {
+            String name = entry.getName();
+            if (isTexture(name)) hashTasks.put(name, pool.submit(() -> hashTexture(entry, byName.get(name + ".mcmeta"))));
+            else if (AssetPruner.isParsed(name)) jsonTasks.put(name, pool.submit(() -> read(entry)));
+        }
+        LinkedHashMap<String, String> textureHashes = new LinkedHashMap<>();
+        LinkedHashMap<String, JsonElement> files = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, ForkJoinTask<String>> task : hashTasks.entrySet()) {
+                textureHashes.put(task.getKey(), ParallelZipWriter.join(task.getValue()));
+            }
+            for (Map.Entry<String, ForkJoinTask<JsonElement>> task : jsonTasks.entrySet()) {
+                files.put(task.getKey(), ParallelZipWriter.join(task.getValue()));
+            }
+        }
+        finally {
+            for (ForkJoinTask<String> task : hashTasks.values()) {
+                task.cancel(true);
+            }
+            for (ForkJoinTask<JsonElement> task : jsonTasks.values()) {
+                task.cancel(true);
+            }
+        }
+
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        // Files named by anything but the members of models, blockstates and item definitions that are rewritten below
+        // cannot be replaced.
+        HashSet<String> pinned = new HashSet<>();
+        for (Map.Entry<String, JsonElement> file : files.entrySet()) {
+            if (!isRewritten(file.getKey())) AssetPruner.collect(file.getValue(), AssetPruner.getPath(file.getKey()), null, byName, pinned);
+            else collectUnrewritten(file.getValue(), isModel(file.getKey()), AssetPruner.getPath(file.getKey()), byName, pinned);
+        }
+
+        HashSet<String> changed = new HashSet<>();
+        HashSet<String> referenced = new HashSet<>();
+        Map<String, String> textureCopies = findCopies(textureHashes, pinned);
+        for (Map.Entry<String, JsonElement> file : files.entrySet()) {
+            if (!isModel(file.getKey()) || !file.getValue().isJsonObject()) continue;
+            JsonElement textures = file.getValue().getAsJsonObject().get("textures");
+            if (textures != null && textures.isJsonObject() && replaceTextures(textures.getAsJsonObject(), textureCopies, referenced)) changed.add(file.getKey());
+        }
+
+        LinkedHashMap<String, String> modelContents = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> file : files.entrySet()) {
+            if (isModel(file.getKey())) modelContents.put(file.getKey(), file.getValue().toString());
+        }
+        Map<String, String> modelCopies = findCopies(modelContents, pinned);
+        for (Map.Entry<String, JsonElement> file : files.entrySet()) {
+            if (isRewritten(file.getKey()) && replaceModels(file.getValue(), isModel(file.getKey()), modelCopies, referenced)) changed.add(file.getKey());
+        }
+
+        ArrayList<PackEntry> deduplicated = new ArrayList<>(entries.size());
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for (PackEntry entry : entries) {
+            String name = entry.getName();
+            bytesIn += entry.getSize();
+            String texture = name.endsWith(".png.mcmeta") ? name.substring(0, name.length() - ".mcmeta".length()) : name;
+            if ((textureCopies.containsKey(texture) && referenced.contains(texture)) || (modelCopies.containsKey(name) && referenced.contains(name))) {
+                removed.add(entry);
+                removedBytes += entry.getSize();
+                continue;
+            }
+            if (changed.contains(name)) {
+                entry = entry.withContent(files.get(name).toString().getBytes(StandardCharsets.UTF_8));
+                rewrittenFiles++;
+            }
+            bytesOut += entry.getSize();
+            deduplicated.add(entry);
+        }
+        span.end(entries.size(), bytesIn, bytesOut);
+        return deduplicated;
+    }
+
+    String hashTexture(PackEntry texture, PackEntry mcmeta) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        String hash = ContentCache.hash(readBytes(texture));
+        // Textures are only the same if they are animated the same way.
+        if (mcmeta != null) hash += ContentCache.hash(readBytes(mcmeta));
+        span.end(texture.getName(), texture.getSize(), 0);
+        return hash;
+    }
+    JsonElement read(PackEntry entry) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        JsonElement json;
+        try (BufferedReader reader = ResourceIndex.newReader(entry)) {
+            json = JsonParser.parseReader(reader);
+        }
+        catch (JsonParseException e) {
+            throw new IOException(String.format("Invalid JSON in %1$s: %2$s", entry.getName(), e.getMessage()), e);
+        }
+        span.end(entry.getName(), entry.getSize(), 0);
+        return json;
+    }
+
+    // Groups the files by their content and returns every copy that can be replaced, with the file it is replaced by.
+    static Map<String, String> findCopies(Map<String, String> contents, Set<String> pinned) {
+        HashMap<String, TreeMap<String, String>> groups = new HashMap<>();
+        for (Map.Entry<String, String> file : contents.entrySet()) {
+            // Files in the minecraft namespace sort first.
+            String key = (file.getKey().startsWith("assets/minecraft/") ? "0" : "1") + file.getKey();
+            groups.computeIfAbsent(file.getValue(), content -> new TreeMap<>()).put(key, file.getKey());
+        }
+
+        HashMap<String, String> copies = new HashMap<>();
+        for (TreeMap<String, String> group : groups.values()) {
+            if (group.size() < 2) continue;
+            String kept = group.firstEntry().getValue();
+            for (String copy : group.values()) {
+                if (!copy.equals(kept) && !copy.startsWith("assets/minecraft/") && !pinned.contains(copy)) copies.put(copy, kept);
+            }
+        }
+        return copies;
+    }
+    // Texture variables are strings, or objects with a sprite in newer versions.
+    static boolean replaceTextures(JsonObject textures, Map<String, String> copies, Set<String> referenced) {
+        boolean changed = false;
+        for (Map.Entry<String, JsonElement> texture : textures.entrySet()) {
+            if (texture.getValue().isJsonObject()) changed |= replace(texture.getValue().getAsJsonObject(), "sprite", "textures/", ".png", copies, referenced);
+            else changed |= replace(textures, texture.getKey(), "textures/", ".png", copies, referenced);
+        }
+        return changed;
+    }
+    // Models refer to other models through their parent and overrides. Blockstates and item definitions do anywhere
+    // through a "model" member.
+    static boolean replaceModels(JsonElement json, boolean model, Map<String, String> copies, Set<String> referenced) {
+        boolean changed = false;
+        if (json.isJsonArray()) {
+            for (JsonElement element : json.getAsJsonArray()) {
+                changed |= replaceModels(element, model, copies, referenced);
+            }
+        }
+        else if (json.isJsonObject()) {
+            JsonObject object = json.getAsJsonObject();
+            if (model) {
+                changed |= replace(object, "parent", "models/", ".json", copies, referenced);
+                JsonElement overrides = object.get("overrides");
+                if (overrides != null && overrides.isJsonArray()) {
+                    for (JsonElement override : overrides.getAsJsonArray()) {
+                        if (override.isJsonObject()) changed |= replace(override.getAsJsonObject(), "model", "models/", ".json", copies, referenced);
+                    }
+                }
+            }
+            else {
+                changed |= replace(object, "model", "models/", ".json", copies, referenced);
+                for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+                    changed |= replaceModels(member.getValue(), false, copies, referenced);
+                }
+            }
+        }
+        return changed;
+    }
+    // Collects the references of a rewritten file that replaceTextures and replaceModels leave alone, like the base model
+    // and texture of special item models.
+    static void collectUnrewritten(JsonElement json, boolean model, String source, Map<String, PackEntry> byName, Set<String> references) {
+        if (json.isJsonArray()) {
+            for (JsonElement element : json.getAsJsonArray()) {
+                collectUnrewritten(element, model, source, byName, references);
+            }
+            return;
+        }
+        if (!json.isJsonObject()) {
+            AssetPruner.collect(json, source, null, byName, references);
+            return;
+        }
+
+        for (Map.Entry<String, JsonElement> member : json.getAsJsonObject().entrySet()) {
+            JsonElement value = member.getValue();
+            if (!model) {
+                if (!(member.getKey().equals("model") && isString(value))) collectUnrewritten(value, false, source, byName, references);
+            }
+            else if (member.getKey().equals("textures") && value.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> texture : value.getAsJsonObject().entrySet()) {
+                    if (!texture.getValue().isJsonObject()) continue;
+                    for (Map.Entry<String, JsonElement> property : texture.getValue().getAsJsonObject().entrySet()) {
+                        if (!property.getKey().equals("sprite")) AssetPruner.collect(property.getValue(), source, null, byName, references);
+                    }
+                }
+            }
+            else if (member.getKey().equals("overrides") && value.isJsonArray()) {
+                for (JsonElement override : value.getAsJsonArray()) {
+                    if (!override.isJsonObject()) {
+                        AssetPruner.collect(override, source, null, byName, references);
+                        continue;
+                    }
+                    for (Map.Entry<String, JsonElement> property : override.getAsJsonObject().entrySet()) {
+                        if (!property.getKey().equals("model")) AssetPruner.collect(property.getValue(), source, null, byName, references);
+                    }
+                }
+            }
+            else if (!member.getKey().equals("parent")) {
+                AssetPruner.collect(value, source, null, byName, references);
+            }
+        }
+    }
+    static boolean isString(JsonElement json) {
+        return json.isJsonPrimitive() && json.getAsJsonPrimitive().isString();
+    }
+    static boolean replace(JsonObject object, String member, String folder, String extension, Map<String, String> copies, Set<String> referenced) {
+        JsonElement value = object.get(member);
+        if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString() || value.getAsString().startsWith("#")) return false;
+
+        String id = ResourceIndex.normalize(value.getAsString());
+        String name = "assets/" + id.substring(0, id.indexOf(':')) + "/" + folder + id.substring(id.indexOf(':') + 1) + extension;
+        String kept = copies.get(name);
+        if (kept == null) return false;
+        referenced.add(name);
+        object.add(member, new JsonPrimitive(getId(kept, folder, extension)));
+        return true;
+    }
+    // Returns the ID of a file like assets/namespace/folder/path.extension.
+    static String getId(String name, String folder, String extension) {
+        int namespaceEnd = name.indexOf('/', "assets/".length());
+        return name.substring("assets/".length(), namespaceEnd) + ":" + name.substring(namespaceEnd + 1 + folder.length(), name.length() - extension.length());
+    }
+    static byte[] readBytes(PackEntry entry) throws IOException {
+        return entry.isInMemory() ? entry.getContent() : Files.readAllBytes(entry.getSource());
+    }
+    static boolean isTexture(String name) {
+        return name.startsWith("assets/") && name.endsWith(".png") && AssetPruner.getPath(name).startsWith("textures/");
+    }
+    static boolean isModel(String name) {
+        return AssetPruner.getPath(name).startsWith("models/");
+    }
+    static boolean isRewritten(String name) {
+        String path = AssetPruner.getPath(name);
+        return path.startsWith("models/") || path.startsWith("blockstates/") || path.startsWith("items/");
+    }
+
+    public AssetDeduplicator(BuildMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
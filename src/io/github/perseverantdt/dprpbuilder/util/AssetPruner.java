@@ -0,0 +1,257 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+// Leaves out the models, textures and sounds of a resource pack that nothing uses. Every other file, and every file
+// matching one of the root patterns, is kept and is where the search starts. From there, blockstates and item
+// definitions lead to models, models to their parents and textures, sounds.json to sounds, atlases and fonts to
+// textures, and any other JSON file to whatever its strings could name. A string that could mean several files keeps
+// all of them, so a file is only left out when nothing in the pack could refer to it.
+public class AssetPruner {
+    List<Pattern> roots;
+    BuildMetrics metrics;
+    ArrayList<PackEntry> removed = new ArrayList<>();
+    long removedBytes;
+
+    public List<PackEntry> getRemoved() {
+        return removed;
+    }
+    public long getRemovedBytes() {
+        return removedBytes;
+    }
+
+    // Reads every JSON file of the pack on the pool, then follows the references from the roots.
+    public List<PackEntry> prune(List<PackEntry> entries, ForkJoinPool pool) throws IOException {
+        HashMap<String, PackEntry> byName = new HashMap<>();
+        for (PackEntry entry : entries) {
+            byName.put(entry.getName(), entry);
+        }
+
+        HashMap<String, ForkJoinTask<Set<String>>> tasks = new HashMap<>();
+        for (PackEntry entry : entries) {
+            if (isParsed(entry.getName())) tasks.put(entry.getName(), pool.submit(() -> findReferences(entry, byName)));
+        }
+        HashMap<String, Set<String>> references = new HashMap<>();
+        try {
+            for (Map.Entry<String, ForkJoinTask<Set<String>>> task : tasks.entrySet()) {
+                references.put(task.getKey(), ParallelZipWriter.join(task.getValue()));
+            }
+        }
+        finally {
+            for (ForkJoinTask<Set<String>> task : tasks.values()) {
+                task.cancel(true);
+            }
+        }
+
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        HashSet<String> reachable = new HashSet<>();
+        HashSet<String> stitchedFolders = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        for (PackEntry entry : entries) {
+            if (!isPrunable(entry.getName()) || isRoot(entry.getName())) mark(entry.getName(), byName, reachable, queue);
+        }
+        while (!queue.isEmpty()) {
+            Set<String> fileReferences = references.get(queue.poll());
+            if (fileReferences == null) continue;
+            for (String reference : fileReferences) {
+                if (!reference.endsWith("/")) {
+                    mark(reference, byName, reachable, queue);
+                }
+                else if (stitchedFolders.add(reference)) {
+                    // Atlases stitch every texture in a folder, in every namespace.
+                    for (String name : byName.keySet()) {
+                        if (getPath(name).startsWith(reference)) mark(name, byName, reachable, queue);
+                    }
+                }
+            }
+        }
+
+        ArrayList<PackEntry> kept = new ArrayList<>(reachable.size());
+        long bytesIn = 0;
+        for (PackEntry entry : entries) {
+            bytesIn += entry.getSize();
+            if (reachable.contains(entry.getName())) {
+                kept.add(entry);
+            }
+            else {
+                removed.add(entry);
+                removedBytes += entry.getSize();
+            }
+        }
+        span.end(entries.size(), bytesIn, bytesIn - removedBytes);
+        return kept;
+    }
+    // Writes the files that were left out as a JSON report, largest first, replacing the previous one.
+    public void writeReport(Path reportPath, String packName) throws IOException {
+        ArrayList<PackEntry> sorted = new ArrayList<>(removed);
+        sorted.sort(Comparator.comparingLong(PackEntry::getSize).reversed().thenComparing(PackEntry::getName));
+
+        if (reportPath.toAbsolutePath().getParent() != null) Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        Path tempPath = InputOutput.getTempSibling(reportPath);
+        try {
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8))) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name("pack").value(packName);
+                writer.name("timestamp").value(System.currentTimeMillis());
+                writer.name("files").value(removed.size());
+                writer.name("bytes").value(removedBytes);
+                writer.name("removed").beginArray();
+                for (PackEntry entry : sorted) {
+                    writer.beginObject();
+                    writer.name("name").value(entry.getName());
+                    writer.name("size").value(entry.getSize());
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            InputOutput.moveAtomically(tempPath, reportPath);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    Set<String> findReferences(PackEntry entry, Map<String, PackEntry> byName) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        JsonElement json;
+        try (BufferedReader reader = ResourceIndex.newReader(entry)) {
+            json = JsonParser.parseReader(reader);
+        }
+        catch (JsonParseException e) {
+            throw new IOException(String.format("Invalid JSON in %1$s: %2$s", entry.getName(), e.getMessage()), e);
+        }
+
+        HashSet<String> references = new HashSet<>();
+        collect(json, getPath(entry.getName()), null, byName, references);
+        span.end(entry.getName(), entry.getSize(), 0);
+        return references;
+    }
+    // The key is the name of the member the element is in, which equipment uses for the layer a texture belongs to.
+    static void collect(JsonElement json, String source, String key, Map<String, PackEntry> byName, Set<String> references) {
+        if (json.isJsonArray()) {
+            for (JsonElement element : json.getAsJsonArray()) {
+                collect(element, source, key, byName, references);
+            }
+        }
+        else if (json.isJsonObject()) {
+            JsonObject object = json.getAsJsonObject();
+            JsonElement folder = object.get("source");
+            if (source.startsWith("atlases/") && ResourceIndex.isType(object.get("type"), "directory") && folder != null && folder.isJsonPrimitive()) {
+                references.add("textures/" + folder.getAsString() + "/");
+            }
+            for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+                collect(member.getValue(), source, member.getValue().isJsonPrimitive() ? key : member.getKey(), byName, references);
+            }
+        }
+        else if (json.isJsonPrimitive() && json.getAsJsonPrimitive().isString()) {
+            String value = json.getAsString();
+            // Strings starting with # are texture variables of models or tags.
+            if (value.isEmpty() || value.startsWith("#") || !ResourceIndex.isResourceId(value, 0, value.length())) return;
+
+            String id = ResourceIndex.normalize(value);
+            String prefix = "assets/" + id.substring(0, id.indexOf(':')) + "/";
+            String path = id.substring(id.indexOf(':') + 1);
+            addIfExists(prefix + "models/" + path + ".json", byName, references);
+            addIfExists(prefix + "textures/" + path + ".png", byName, references);
+            addIfExists(prefix + "sounds/" + path + ".ogg", byName, references);
+            // Fonts and post effects name files with their extension, relative to the namespace or to its textures.
+            addIfExists(prefix + path, byName, references);
+            addIfExists(prefix + "textures/" + path, byName, references);
+            if (source.startsWith("particles/")) addIfExists(prefix + "textures/particle/" + path + ".png", byName, references);
+            if (source.startsWith("post_effect/") || source.startsWith("shaders/post/")) addIfExists(prefix + "textures/effect/" + path + ".png", byName, references);
+            if ((source.startsWith("equipment/") || source.startsWith("models/equipment/")) && key != null) addIfExists(prefix + "textures/entity/equipment/" + key + "/" + path + ".png", byName, references);
+        }
+    }
+    boolean isRoot(String name) {
+        for (Pattern root : roots) {
+            if (root.matcher(name).matches()) return true;
+        }
+        return false;
+    }
+
+    // Animated textures keep their .mcmeta file.
+    static void mark(String name, Map<String, PackEntry> byName, Set<String> reachable, ArrayDeque<String> queue) {
+        if (!reachable.add(name)) return;
+        queue.add(name);
+        if (name.endsWith(".png") && byName.containsKey(name + ".mcmeta")) reachable.add(name + ".mcmeta");
+    }
+    static void addIfExists(String name, Map<String, PackEntry> byName, Set<String> references) {
+        if (byName.containsKey(name)) references.add(name);
+    }
+    // Language files hold nothing but text.
+    static boolean isParsed(String name) {
+        return name.startsWith("assets/") && name.endsWith(".json") && !getPath(name).startsWith("lang/");
+    }
+    // Only files the game loads when something refers to them can be left out.
+    static boolean isPrunable(String name) {
+        if (!name.startsWith("assets/")) return false;
+        String path = getPath(name);
+        return (path.startsWith("models/") && path.endsWith(".json")) || (path.startsWith("textures/") && (path.endsWith(".png") || path.endsWith(".png.mcmeta"))) || (path.startsWith("sounds/") && path.endsWith(".ogg"));
+    }
+    // Returns the path of a file like assets/namespace/path inside its namespace, or an empty string for files outside
+    // of one.
+    static String getPath(String name) {
+        int namespaceEnd = name.startsWith("assets/") ? name.indexOf('/', "assets/".length()) : -1;
+        return namespaceEnd < 0 ? "" : name.substring(namespaceEnd + 1);
+    }
+    // Turns a pattern like "assets/*/models/item/**" into a regular expression. * matches within a folder and ** across
+    // folders.
+    static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            }
+            else if (glob.charAt(i) == '*') {
+                regex.append("[^/]*");
+                i++;
+            }
+            else if (glob.charAt(i) == '?') {
+                regex.append("[^/]");
+                i++;
+            }
+            else {
+                int end = i;
+                while (end < glob.length() && glob.charAt(end) != '*' && glob.charAt(end) != '?') {
+                    end++;
+                }
+                regex.append(Pattern.quote(glob.substring(i, end)));
+                i = end;
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public AssetPruner(List<String> roots, BuildMetrics metrics) {
+        this.roots = new ArrayList<>();
+        for (String root : roots) {
+            this.roots.add(toPattern(root));
+        }
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+// Remembers the size, modification time and CRC-32 of the source of every file in a build output, so that the next
+// build can tell which files changed without reading them.
+public class BuildManifest {
+    public static final String FILE_NAME = ".dprpbuilder-manifest.json";
+    // Files that were written without being read have no hash. CRC-32 values are never negative.
+    public static final long UNKNOWN_HASH = -1;
+    static final int FORMAT = 1;
+
+    String settings;
+    HashMap<String, Record> records = new HashMap<>();
+
+    public String getSettings() {
+        return settings;
+    }
+    public Record get(String name) {
+        return records.get(name);
+    }
+    public void put(String name, Record record) {
+        records.put(name, record);
+    }
+    public Set<String> getNames() {
+        return records.keySet();
+    }
+    // Whether the entry's source is known to be unchanged from the size and modification time alone.
+    public boolean isUnchanged(PackEntry entry) {
+        Record record = records.get(entry.getName());
+        return record != null && !entry.isInMemory() && record.size == entry.getSize() && record.lastModified == entry.getLastModified();
+    }
+    public void save(Path manifestPath) throws IOException {
+        Path tempPath = InputOutput.getTempSibling(manifestPath);
+        try {
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8))) {
+                writer.beginObject();
+                writer.name("format").value(FORMAT);
+                writer.name("settings").value(settings);
+                writer.name("records").beginObject();
+                for (Map.Entry<String, Record> record : records.entrySet()) {
+                    writer.name(record.getKey()).beginArray();
+                    writer.value(record.getValue().size);
+                    writer.value(record.getValue().lastModified);
+                    writer.value(record.getValue().hash);
+                    writer.endArray();
+                }
+                writer.endObject();
+                writer.endObject();
+            }
+            InputOutput.moveAtomically(tempPath, manifestPath);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    // Returns null if there is no usable manifest or if it was written with different settings, in which case everything
+    // has to be rebuilt.
+    public static BuildManifest load(Path manifestPath, String settings) {
+        if (Files.notExists(manifestPath)) return null;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8))) {
+            BuildManifest manifest = new BuildManifest(null);
+            int format = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "format":
+                        format = reader.nextInt();
+                        break;
+                    case "settings":
+                        manifest.settings = reader.nextString();
+                        break;
+                    case "records":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            reader.beginArray();
+                            manifest.records.put(name, new Record(reader.nextLong(), reader.nextLong(), reader.nextLong()));
+                            reader.endArray();
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return format == FORMAT && settings.equals(manifest.settings) ? manifest : null;
+        }
+        catch (IOException | RuntimeException e) {
+            System.out.printf("Could not read the build manifest at %1$s. Rebuilding everything.\n", manifestPath);
+            return null;
+        }
+    }
+    public static Path getSidecarPath(Path archivePath) {
+        return archivePath.toAbsolutePath().resolveSibling("." + archivePath.getFileName() + FILE_NAME);
+    }
+    // The CRC-32 of the entry, which is also what zip archives store, so zip builds get it for free and can compare it to
+    // the CRC of the entry they would copy from the previous archive. CRC-32C is faster but would not match it.
+    public static long hash(PackEntry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        if (entry.isInMemory()) {
+            crc.update(entry.getContent());
+            return crc.getValue();
+        }
+
+        try (InputStream input = Files.newInputStream(entry.getSource())) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static class Record {
+        long size;
+        long lastModified;
+        long hash;
+
+        public long getSize() {
+            return size;
+        }
+        public long getLastModified() {
+            return lastModified;
+        }
+        public long getHash() {
+            return hash;
+        }
+
+        public Record(long size, long lastModified, long hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    public BuildManifest(String settings) {
+        this.settings = settings;
+    }
+}
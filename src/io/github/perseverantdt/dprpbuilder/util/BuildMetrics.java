@@ -0,0 +1,223 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Times the phases of a pack build and counts the entries and bytes that go through each of them. Phases run on many
+// threads at once, so their times are summed across threads and can add up to more than the time the build took.
+public class BuildMetrics {
+    public enum Phase {
+        SCAN,
+        FILTER,
+        READ,
+        TRANSFORM,
+        VALIDATE,
+        COMPRESS,
+        WRITE,
+        FINALIZE
+    }
+
+    static final int FORMAT = 1;
+
+    String packName;
+    int slowestFileCount;
+    boolean jfrEvents;
+    LongAdder[] phaseNanos = newAdders();
+    LongAdder[] phaseEntries = newAdders();
+    LongAdder[] phaseBytesIn = newAdders();
+    LongAdder[] phaseBytesOut = newAdders();
+    ConcurrentHashMap<String, LongAdder> fileNanos = new ConcurrentHashMap<>();
+    int entries;
+    long bytesIn;
+    long bytesOut;
+    String sha1;
+    long millis;
+    String error;
+
+    public String getPackName() {
+        return packName;
+    }
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+    public int getEntries() {
+        return entries;
+    }
+    public long getBytesIn() {
+        return bytesIn;
+    }
+    public long getBytesOut() {
+        return bytesOut;
+    }
+    public String getSha1() {
+        return sha1;
+    }
+    public long getMillis() {
+        return millis;
+    }
+    public Span begin(Phase phase) {
+        return new Span(phase, jfrEvents ? new BuildPhaseEvent() : null);
+    }
+    // The entries of the finished pack, the bytes of their sources and the size of the output.
+    public void setTotals(List<PackEntry> entries, long bytesOut) {
+        long bytesIn = 0;
+        for (PackEntry entry : entries) {
+            bytesIn += entry.getSize();
+        }
+        this.entries = entries.size();
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+    }
+    public void setSha1(String sha1) {
+        this.sha1 = sha1;
+    }
+    public void finish(long millis, Exception error) {
+        this.millis = millis;
+        this.error = error != null ? error.toString() : null;
+    }
+
+    // Writes the metrics of every pack of a build as one JSON report, replacing the previous one.
+    public static void writeReport(Path reportPath, List<BuildMetrics> builds) throws IOException {
+        if (reportPath.toAbsolutePath().getParent() != null) Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        Path tempPath = InputOutput.getTempSibling(reportPath);
+        try {
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8))) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name("format").value(FORMAT);
+                writer.name("timestamp").value(System.currentTimeMillis());
+                writer.name("packs").beginArray();
+                for (BuildMetrics build : builds) {
+                    build.write(writer);
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            InputOutput.moveAtomically(tempPath, reportPath);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("pack").value(packName);
+        writer.name("successful").value(error == null);
+        if (error != null) writer.name("error").value(error);
+        writer.name("millis").value(millis);
+        writer.name("entries").value(entries);
+        writer.name("bytesIn").value(bytesIn);
+        writer.name("bytesOut").value(bytesOut);
+        if (sha1 != null) writer.name("sha1").value(sha1);
+        writer.name("entriesPerSecond").value(millis > 0 ? Math.round(entries * 1000.0 / millis) : entries);
+
+        writer.name("phases").beginObject();
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            writer.name(phase.name().toLowerCase(Locale.ROOT)).beginObject();
+            writer.name("millis").value(TimeUnit.NANOSECONDS.toMillis(phaseNanos[i].sum()));
+            writer.name("entries").value(phaseEntries[i].sum());
+            writer.name("bytesIn").value(phaseBytesIn[i].sum());
+            writer.name("bytesOut").value(phaseBytesOut[i].sum());
+            writer.endObject();
+        }
+        writer.endObject();
+
+        writer.name("slowestFiles").beginArray();
+        for (Map.Entry<String, Long> file : getSlowestFiles()) {
+            writer.beginObject();
+            writer.name("name").value(file.getKey());
+            writer.name("millis").value(file.getValue() / 1e6);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+    List<Map.Entry<String, Long>> getSlowestFiles() {
+        PriorityQueue<Map.Entry<String, Long>> slowest = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<String, LongAdder> file : fileNanos.entrySet()) {
+            slowest.add(Map.entry(file.getKey(), file.getValue().sum()));
+            if (slowest.size() > slowestFileCount) slowest.poll();
+        }
+        ArrayList<Map.Entry<String, Long>> files = new ArrayList<>(slowest);
+        files.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        return files;
+    }
+
+    static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // One timed piece of work. Ending a span with a file name counts it as one entry of the phase and adds its time to
+    // the file's, which is what the slowest files are ranked by. Large files are split into chunks, so each chunk counts
+    // as an entry of the phases it went through.
+    public class Span {
+        Phase phase;
+        BuildPhaseEvent event;
+        long start;
+
+        public void end(String file, long bytesIn, long bytesOut) {
+            record(file, 1, bytesIn, bytesOut);
+        }
+        // Ends a span that covered count entries at once, or none.
+        public void end(int count, long bytesIn, long bytesOut) {
+            record(null, count, bytesIn, bytesOut);
+        }
+
+        void record(String file, int count, long bytesIn, long bytesOut) {
+            long nanos = System.nanoTime() - start;
+            int i = phase.ordinal();
+            phaseNanos[i].add(nanos);
+            phaseEntries[i].add(count);
+            phaseBytesIn[i].add(bytesIn);
+            phaseBytesOut[i].add(bytesOut);
+            if (file != null && slowestFileCount > 0) fileNanos.computeIfAbsent(file, name -> new LongAdder()).add(nanos);
+
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.pack = packName;
+                    event.phase = phase.name().toLowerCase(Locale.ROOT);
+                    event.file = file;
+                    event.entries = count;
+                    event.bytesIn = bytesIn;
+                    event.bytesOut = bytesOut;
+                    event.commit();
+                }
+            }
+        }
+
+        Span(Phase phase, BuildPhaseEvent event) {
+            this.phase = phase;
+            this.event = event;
+            if (event != null) event.begin();
+            this.start = System.nanoTime();
+        }
+    }
+
+    // slowestFileCount files are kept for the report, or none if it is 0. With jfrEvents, every span is also recorded
+    // as a JFR event while a flight recording is running.
+    public BuildMetrics(String packName, int slowestFileCount, boolean jfrEvents) {
+        this.packName = packName;
+        this.slowestFileCount = slowestFileCount;
+        this.jfrEvents = jfrEvents;
+    }
+}
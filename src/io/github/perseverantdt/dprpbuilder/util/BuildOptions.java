@@ -0,0 +1,117 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class BuildOptions {
+    ForkJoinPool compressionPool;
+    CompressionPolicy compressionPolicy;
+    boolean incremental;
+    boolean hardLinks;
+    boolean minifyJson;
+    boolean optimizePng;
+    boolean pruneUnused;
+    List<String> pruneRoots;
+    Path pruneReportPath;
+    boolean deduplicate;
+    long maxPackSize;
+    boolean preprocessFunctions;
+    List<String> entryFunctions;
+    boolean validateReferences;
+    boolean reproducible;
+    ContentCache cache;
+    boolean cacheZipEntries;
+    SourceReader sourceReader;
+
+    public ForkJoinPool getCompressionPool() {
+        return compressionPool;
+    }
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    public boolean isIncremental() {
+        return incremental;
+    }
+    public boolean isHardLinks() {
+        return hardLinks;
+    }
+    public boolean isMinifyJson() {
+        return minifyJson;
+    }
+    public boolean isOptimizePng() {
+        return optimizePng;
+    }
+    public boolean isPruneUnused() {
+        return pruneUnused;
+    }
+    public List<String> getPruneRoots() {
+        return pruneRoots;
+    }
+    public Path getPruneReportPath() {
+        return pruneReportPath;
+    }
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+    // In bytes, or 0 if zips are never split.
+    public long getMaxPackSize() {
+        return maxPackSize;
+    }
+    public boolean isPreprocessFunctions() {
+        return preprocessFunctions;
+    }
+    public List<String> getEntryFunctions() {
+        return entryFunctions;
+    }
+    public boolean isValidateReferences() {
+        return validateReferences;
+    }
+    public boolean isReproducible() {
+        return reproducible;
+    }
+    public ContentCache getCache() {
+        return cache;
+    }
+    public boolean isCacheZipEntries() {
+        return cacheZipEntries;
+    }
+    public SourceReader getSourceReader() {
+        return sourceReader;
+    }
+    public BuildOptions withIncremental(boolean incremental) {
+        return new BuildOptions(compressionPool, compressionPolicy, incremental, hardLinks, minifyJson, optimizePng, pruneUnused, pruneRoots, pruneReportPath, deduplicate, maxPackSize, preprocessFunctions, entryFunctions, validateReferences, reproducible, cache, cacheZipEntries, sourceReader);
+    }
+    // Describes every setting that changes the bytes of a build, so that incremental builds know when they cannot
+    // reuse a previous output.
+    public String describe(boolean zipped) {
+        String output = zipped ? "zip;" + compressionPolicy.describe() + (reproducible ? ";reproducible" : "") : (hardLinks ? "folder;hardlinks" : "folder");
+        if (minifyJson) output += ";minify";
+        if (optimizePng) output += ";png" + PngOptimizer.VERSION;
+        if (pruneUnused) output += ";prune:" + String.join(",", pruneRoots);
+        if (deduplicate) output += ";dedup";
+        if (preprocessFunctions) output += ";functions:" + String.join(",", entryFunctions);
+        return output;
+    }
+
+    BuildOptions(ForkJoinPool compressionPool, CompressionPolicy compressionPolicy, boolean incremental, boolean hardLinks, boolean minifyJson, boolean optimizePng, boolean pruneUnused, List<String> pruneRoots, Path pruneReportPath, boolean deduplicate, long maxPackSize, boolean preprocessFunctions, List<String> entryFunctions, boolean validateReferences, boolean reproducible, ContentCache cache, boolean cacheZipEntries, SourceReader sourceReader) {
+        this.compressionPool = compressionPool;
+        this.compressionPolicy = compressionPolicy;
+        this.incremental = incremental;
+        this.hardLinks = hardLinks;
+        this.minifyJson = minifyJson;
+        this.optimizePng = optimizePng;
+        this.pruneUnused = pruneUnused;
+        this.pruneRoots = pruneRoots;
+        this.pruneReportPath = pruneReportPath;
+        this.deduplicate = deduplicate;
+        this.maxPackSize = maxPackSize;
+        this.preprocessFunctions = preprocessFunctions;
+        this.entryFunctions = entryFunctions;
+        this.validateReferences = validateReferences;
+        this.reproducible = reproducible;
+        this.cache = cache;
+        this.cacheZipEntries = cacheZipEntries;
+        this.sourceReader = sourceReader;
+    }
+}
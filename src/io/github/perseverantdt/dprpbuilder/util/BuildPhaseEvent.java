@@ -0,0 +1,30 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Shows the phases of pack builds in JDK Mission Control. Only created with jfrEvents=yes, and only recorded while a
+// flight recording is running, for example with -XX:StartFlightRecording.
+@Name("io.github.perseverantdt.dprpbuilder.BuildPhase")
+@Label("Pack Build Phase")
+@Category("DPRPBuilder")
+@Description("A timed piece of work in a pack build, usually one file in one phase.")
+class BuildPhaseEvent extends jdk.jfr.Event {
+    @Label("Pack")
+    String pack;
+    @Label("Phase")
+    String phase;
+    @Label("File")
+    String file;
+    @Label("Entries")
+    int entries;
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+}
@@ -0,0 +1,126 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+// Maps file extensions to how their entries are compressed. A policy is written as a comma-separated list of
+// "extension:setting" pairs, where the setting is "stored", "default", "auto", "max" or a DEFLATE level from 1 to 9,
+// and the extension "*" applies to every extension that is not listed. Entries set to "max" go through the
+// ExhaustiveDeflater, as many times as maxIterations allows, for at most maxMillis per chunk.
+public class CompressionPolicy {
+    public static final int STORED = 0;
+    public static final int AUTO = -2;
+    public static final int MAX = -3;
+    public static final int SAMPLE_SIZE = 1 << 16;
+
+    HashMap<String, Integer> levels;
+    int defaultLevel;
+    double autoMinRatio;
+    int maxIterations;
+    long maxMillis;
+
+    public int getLevel(String entryName) {
+        Integer level = levels.get(FilenameUtils.getExtension(entryName).toLowerCase(Locale.ROOT));
+        return level != null ? level : defaultLevel;
+    }
+    public double getAutoMinRatio() {
+        return autoMinRatio;
+    }
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+    public boolean usesMax() {
+        return defaultLevel == MAX || levels.containsValue(MAX);
+    }
+    // Whether an entry set to AUTO is worth deflating, judging by how well a sample of it compressed.
+    public boolean isWorthDeflating(long sampleSize, long compressedSampleSize) {
+        return compressedSampleSize == 0 || (double) sampleSize / compressedSampleSize >= autoMinRatio;
+    }
+
+    public String describe() {
+        StringBuilder description = new StringBuilder();
+        levels.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(level -> description.append(level.getKey()).append(':').append(describeLevel(level.getValue())).append(','));
+        description.append("*:").append(describeLevel(defaultLevel)).append(",ratio:").append(autoMinRatio);
+        if (usesMax()) description.append(",iterations:").append(maxIterations).append(",millis:").append(maxMillis);
+        return description.toString();
+    }
+
+    public static CompressionPolicy parse(String policy, double autoMinRatio) {
+        return parse(policy, autoMinRatio, 15, 0);
+    }
+    // A maxMillis of 0 leaves the time of "max" entries unlimited.
+    public static CompressionPolicy parse(String policy, double autoMinRatio, int maxIterations, long maxMillis) {
+        HashMap<String, Integer> levels = new HashMap<>();
+        int defaultLevel = Deflater.DEFAULT_COMPRESSION;
+        if (policy != null) {
+            for (String rule : policy.split(",")) {
+                if (rule.isBlank()) continue;
+
+                int separator = rule.indexOf(':');
+                if (separator < 0) throw new IllegalArgumentException("Compression rules must be written as extension:setting, got: " + rule.trim());
+                String extension = rule.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+                if (extension.startsWith(".")) extension = extension.substring(1);
+                int level = parseLevel(rule.substring(separator + 1).trim());
+
+                if (extension.equals("*")) defaultLevel = level;
+                else levels.put(extension, level);
+            }
+        }
+        if (autoMinRatio < 1) throw new IllegalArgumentException("The minimum compression ratio for auto compression must be at least 1.");
+        if (maxIterations < 1) throw new IllegalArgumentException("The number of iterations for max compression must be at least 1.");
+        if (maxMillis < 0) throw new IllegalArgumentException("The time limit for max compression must not be negative.");
+
+        return new CompressionPolicy(levels, defaultLevel, autoMinRatio, maxIterations, maxMillis);
+    }
+
+    static int parseLevel(String setting) {
+        switch (setting.toLowerCase(Locale.ROOT)) {
+            case "stored":
+                return STORED;
+            case "auto":
+                return AUTO;
+            case "max":
+                return MAX;
+            case "default":
+                return Deflater.DEFAULT_COMPRESSION;
+        }
+
+        try {
+            int level = Integer.parseInt(setting);
+            if (level >= 1 && level <= 9) return level;
+        }
+        catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Unknown compression setting: " + setting + ". Expected stored, default, auto, max or a level from 1 to 9.");
+    }
+
+    static String describeLevel(int level) {
+        switch (level) {
+            case STORED:
+                return "stored";
+            case AUTO:
+                return "auto";
+            case MAX:
+                return "max";
+            case Deflater.DEFAULT_COMPRESSION:
+                return "default";
+            default:
+                return Integer.toString(level);
+        }
+    }
+
+    CompressionPolicy(HashMap<String, Integer> levels, int defaultLevel, double autoMinRatio, int maxIterations, long maxMillis) {
+        this.levels = levels;
+        this.defaultLevel = defaultLevel;
+        this.autoMinRatio = autoMinRatio;
+        this.maxIterations = maxIterations;
+        this.maxMillis = maxMillis;
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps the results of expensive work on files between builds, keyed by the hash of what went in. Every kind of result
+// has its own namespace, which should change whenever the way the results are made changes. Results are written to a
+// temporary file and moved into place, so that a build never reads a result that is only partly written, even when
+// several builders share the cache. Reading a result marks it as used, and once the cache grows past its size limit,
+// the least recently used results are deleted by whichever builder gets the lock on the cache first.
+public class ContentCache {
+    static final String LOCK_FILE = ".lock";
+    // Temporary files this old were left behind by a builder that did not finish.
+    static final long ABANDONED_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    Path folder;
+    long sizeLimit;
+    LongAdder addedBytes = new LongAdder();
+    boolean writeFailed;
+
+    public Path getFolder() {
+        return folder;
+    }
+    public long getSizeLimit() {
+        return sizeLimit;
+    }
+    // Returns null if there is no result for the hash.
+    public byte[] get(String namespace, String hash) throws IOException {
+        Path path = getPath(namespace, hash);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException ignored) {
+            // The result was just deleted by another builder, or the cache is read-only. Either way, it was read.
+        }
+        return content;
+    }
+    // Failing to store a result only makes the next build slower, so it is reported once instead of failing the build.
+    public void put(String namespace, String hash, byte[] content) {
+        Path path = getPath(namespace, hash);
+        Path tempPath = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tempPath = InputOutput.getTempSibling(path);
+            Files.write(tempPath, content);
+            InputOutput.moveAtomically(tempPath, path);
+            addedBytes.add(content.length);
+        }
+        catch (IOException e) {
+            if (!writeFailed) System.out.printf("Could not write to the cache at %1$s (%2$s). Results will not be cached.\n", folder, e);
+            writeFailed = true;
+        }
+        finally {
+            try {
+                if (tempPath != null) Files.deleteIfExists(tempPath);
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Deletes the least recently used results until the cache is well under its size limit, if anything was added to
+    // it since the last time. Builders that find the cache locked skip this, since another one is already trimming it.
+    public void trim() throws IOException {
+        if (sizeLimit <= 0 || addedBytes.sumThenReset() == 0 || !Files.isDirectory(folder)) return;
+
+        try (FileChannel lockChannel = FileChannel.open(folder.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            }
+            catch (OverlappingFileLockException e) {
+                // The lock is held by another build in this process.
+                lock = null;
+            }
+            if (lock == null) return;
+
+            ArrayList<CachedFile> files = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    String name = file.getFileName().toString();
+                    long lastUsed = attributes.lastModifiedTime().toMillis();
+                    if (name.equals(LOCK_FILE)) return FileVisitResult.CONTINUE;
+                    if (name.startsWith(".") && name.endsWith(".tmp")) {
+                        if (now - lastUsed > ABANDONED_MILLIS) Files.deleteIfExists(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    files.add(new CachedFile(file, attributes.size(), lastUsed));
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Files deleted by another builder while walking are simply skipped.
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            long size = 0;
+            for (CachedFile file : files) {
+                size += file.size;
+            }
+            if (size <= sizeLimit) return;
+
+            // Trimming to 90% of the limit keeps every following build from having to trim again.
+            long target = sizeLimit / 10 * 9;
+            files.sort(Comparator.comparingLong(file -> file.lastUsed));
+            for (CachedFile file : files) {
+                if (size <= target) break;
+                try {
+                    Files.deleteIfExists(file.path);
+                    size -= file.size;
+                }
+                catch (IOException ignored) {
+                    // Some systems do not delete files that are open, and another builder might be reading this one.
+                }
+            }
+        }
+    }
+
+    Path getPath(String namespace, String hash) {
+        return folder.resolve(namespace).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    public static String hash(byte[] content) {
+        return hash(ByteBuffer.wrap(content));
+    }
+    public static String hash(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content.duplicate());
+            return InputOutput.toHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java runtime has to support SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class CachedFile {
+        Path path;
+        long size;
+        long lastUsed;
+
+        CachedFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    // A size limit of 0 lets the cache grow without limit.
+    public ContentCache(Path folder, long sizeLimit) {
+        this.folder = folder.toAbsolutePath().normalize();
+        this.sizeLimit = sizeLimit;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+// Changes the content of a pack entry before it is written, like minifying or optimizing it.
+public interface EntryTransform {
+    PackEntry transform(PackEntry entry) throws IOException;
+
+    // Transforms the entries that match the filter on the pool and returns every entry in its original order.
+    static List<PackEntry> apply(List<PackEntry> entries, ForkJoinPool pool, Predicate<PackEntry> filter, EntryTransform transform) throws IOException {
+        ArrayList<ForkJoinTask<PackEntry>> tasks = new ArrayList<>(entries.size());
+        for (PackEntry entry : entries) {
+            tasks.add(filter.test(entry) ? pool.submit(() -> transform.transform(entry)) : null);
+        }
+
+        ArrayList<PackEntry> transformed = new ArrayList<>(entries.size());
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                ForkJoinTask<PackEntry> task = tasks.get(i);
+                transformed.add(task != null ? ParallelZipWriter.join(task) : entries.get(i));
+            }
+        }
+        finally {
+            for (ForkJoinTask<PackEntry> task : tasks) {
+                if (task != null) task.cancel(true);
+            }
+        }
+        return transformed;
+    }
+}
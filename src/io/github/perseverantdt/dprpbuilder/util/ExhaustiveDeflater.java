@@ -0,0 +1,752 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// A DEFLATE encoder that spends far more time than Deflater to make its output smaller, the way Zopfli does. Every
+// position is searched once for the closest match of every length. The input is then split into blocks wherever a new
+// Huffman code pays for itself, and each block is parsed again and again, choosing the cheapest path through its
+// literals and matches with the symbol costs of the previous parse. Huffman codes are length-limited optimal codes
+// found with the boundary package-merge algorithm. The output is a standard raw DEFLATE stream.
+public class ExhaustiveDeflater {
+    static final int WINDOW_SIZE = 1 << 15;
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 258;
+    static final int HASH_BITS = 15;
+    static final int MAX_CHAIN_HITS = 1024;
+    // Only the longest matches of a position are kept. Shorter lengths use the distance of the shortest kept match.
+    static final int KEPT_MATCHES = 8;
+    static final int MAX_BLOCKS = 15;
+    static final int MIN_SPLIT_SYMBOLS = 1024;
+    static final int SPLIT_SAMPLES = 9;
+    static final int MAX_STORED_LENGTH = 65535;
+    // How often the deadline is checked while searching for matches, in positions.
+    static final int DEADLINE_INTERVAL = 1 << 12;
+
+    static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+    // The code of every length and distance, without the 257 the length symbols start at.
+    static final int[] LENGTH_CODES = new int[MAX_MATCH + 1];
+    static final int[] DISTANCE_CODES = new int[WINDOW_SIZE + 1];
+    static final int[] FIXED_LITERAL_LENGTHS = new int[288];
+    static final int[] FIXED_DISTANCE_LENGTHS = new int[30];
+
+    static {
+        for (int code = 0; code < LENGTH_BASE.length - 1; code++) {
+            for (int length = LENGTH_BASE[code]; length < LENGTH_BASE[code] + (1 << LENGTH_EXTRA[code]) && length < MAX_MATCH; length++) {
+                LENGTH_CODES[length] = code;
+            }
+        }
+        LENGTH_CODES[MAX_MATCH] = LENGTH_BASE.length - 1;
+        for (int code = 0; code < DISTANCE_BASE.length; code++) {
+            for (int distance = DISTANCE_BASE[code]; distance < DISTANCE_BASE[code] + (1 << DISTANCE_EXTRA[code]) && distance <= WINDOW_SIZE; distance++) {
+                DISTANCE_CODES[distance] = code;
+            }
+        }
+        for (int symbol = 0; symbol < 288; symbol++) {
+            FIXED_LITERAL_LENGTHS[symbol] = symbol < 144 ? 8 : symbol < 256 ? 9 : symbol < 280 ? 7 : 8;
+        }
+        Arrays.fill(FIXED_DISTANCE_LENGTHS, 5);
+    }
+
+    byte[] data;
+    int start;
+    int end;
+    int maxIterations;
+    long deadline;
+    // The matches of the position start + i are those from matchStarts[i] up to matchStarts[i + 1], by length.
+    int[] matchStarts;
+    int[] matchLengths = new int[1 << 10];
+    int[] matchDistances = new int[1 << 10];
+    int matchCount;
+
+    // Deflates the input after the dictionary, which matches may refer to. Unless it is the last part of an entry, the
+    // output ends with an empty stored block like a sync flush does, so that the next part can follow it. Returns
+    // null if the deadline, a System.nanoTime() value, passes before anything was found.
+    public static byte[] deflate(ByteBuffer input, int dictionaryLength, boolean last, int maxIterations, long deadline) {
+        byte[] data = new byte[input.remaining()];
+        input.duplicate().get(data);
+        return new ExhaustiveDeflater(data, dictionaryLength, maxIterations, deadline).deflate(last);
+    }
+
+    byte[] deflate(boolean last) {
+        BitWriter output = new BitWriter(Math.max(64, (end - start) / 2));
+        if (start == end) {
+            // An empty fixed block, which is only its end code.
+            output.write(last ? 1 : 0, 1);
+            output.write(1, 2);
+            output.write(0, 7);
+        }
+        else {
+            if (!findMatches()) return null;
+            Symbols parsed = parseLazily(start, end);
+            List<Integer> splits = split(parsed);
+
+            ArrayList<Integer> boundaries = new ArrayList<>();
+            boundaries.add(start);
+            int position = start;
+            int symbol = 0;
+            for (int split : splits) {
+                while (symbol < split) {
+                    position += parsed.getLength(symbol++);
+                }
+                boundaries.add(position);
+            }
+            boundaries.add(end);
+
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                int blockStart = boundaries.get(i);
+                int blockEnd = boundaries.get(i + 1);
+                writeBlock(output, blockStart, blockEnd, optimize(blockStart, blockEnd), last && i + 2 == boundaries.size());
+            }
+        }
+
+        if (!last) {
+            output.write(0, 3);
+            output.alignToByte();
+            output.writeBytes(new byte[] {0, 0, (byte) 0xFF, (byte) 0xFF}, 0, 4);
+        }
+        output.alignToByte();
+        return output.toByteArray();
+    }
+
+    // Returns false if the deadline passed first.
+    boolean findMatches() {
+        int[] head = new int[1 << HASH_BITS];
+        Arrays.fill(head, -1);
+        int[] previous = new int[end];
+        matchStarts = new int[end - start + 1];
+        for (int i = 0; i < end; i++) {
+            if (i >= start) {
+                if ((i - start) % DEADLINE_INTERVAL == 0 && System.nanoTime() > deadline) return false;
+                matchStarts[i - start] = matchCount;
+                if (i + MIN_MATCH <= end) search(i, head, previous);
+            }
+            if (i + MIN_MATCH <= end) {
+                int hash = hash(i);
+                previous[i] = head[hash];
+                head[hash] = i;
+            }
+        }
+        matchStarts[end - start] = matchCount;
+        return true;
+    }
+    // Walks the positions with the same hash from the closest one, keeping every match longer than the ones before it,
+    // so that each kept match is the closest one of its length.
+    void search(int position, int[] head, int[] previous) {
+        int maxLength = Math.min(MAX_MATCH, end - position);
+        int first = matchCount;
+        int bestLength = MIN_MATCH - 1;
+        int candidate = head[hash(position)];
+        for (int hits = 0; candidate >= 0 && position - candidate <= WINDOW_SIZE && hits < MAX_CHAIN_HITS; hits++) {
+            if (data[candidate + bestLength] == data[position + bestLength]) {
+                int length = 0;
+                while (length < maxLength && data[candidate + length] == data[position + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    addMatch(length, position - candidate);
+                    if (length == maxLength) break;
+                }
+            }
+            candidate = previous[candidate];
+        }
+
+        if (matchCount - first > KEPT_MATCHES) {
+            System.arraycopy(matchLengths, matchCount - KEPT_MATCHES, matchLengths, first, KEPT_MATCHES);
+            System.arraycopy(matchDistances, matchCount - KEPT_MATCHES, matchDistances, first, KEPT_MATCHES);
+            matchCount = first + KEPT_MATCHES;
+        }
+    }
+    void addMatch(int length, int distance) {
+        if (matchCount == matchLengths.length) {
+            matchLengths = Arrays.copyOf(matchLengths, matchCount * 2);
+            matchDistances = Arrays.copyOf(matchDistances, matchCount * 2);
+        }
+        matchLengths[matchCount] = length;
+        matchDistances[matchCount] = distance;
+        matchCount++;
+    }
+    int hash(int position) {
+        return (((data[position] & 0xFF) << 10) ^ ((data[position + 1] & 0xFF) << 5) ^ (data[position + 2] & 0xFF)) & ((1 << HASH_BITS) - 1);
+    }
+    // The longest match at a position that ends before the limit, or 0.
+    int getMaxLength(int position, int limit) {
+        int last = matchStarts[position - start + 1] - 1;
+        return last < matchStarts[position - start] ? 0 : Math.min(matchLengths[last], limit - position);
+    }
+    // The closest distance of a match of the length at a position.
+    int getDistance(int position, int length) {
+        for (int i = matchStarts[position - start]; i < matchStarts[position - start + 1]; i++) {
+            if (matchLengths[i] >= length) return matchDistances[i];
+        }
+        throw new IllegalStateException("No match of length " + length + " at " + position);
+    }
+
+    // Parses like zlib does, taking a match unless the next position has a longer one.
+    Symbols parseLazily(int from, int to) {
+        Symbols symbols = new Symbols();
+        int position = from;
+        while (position < to) {
+            int length = getMaxLength(position, to);
+            if (length >= MIN_MATCH && (position + 1 >= to || getMaxLength(position + 1, to) <= length)) {
+                symbols.add(length, getDistance(position, length));
+                position += length;
+            }
+            else {
+                symbols.add(data[position] & 0xFF, 0);
+                position++;
+            }
+        }
+        return symbols;
+    }
+    // Parses the block again with the symbol costs of the previous parse until the iterations or the time run out, and
+    // returns the parse that encodes to the fewest bits.
+    Symbols optimize(int from, int to) {
+        Symbols best = parseLazily(from, to);
+        long bestSize = getBlockSize(best, to - from);
+        Symbols current = best;
+        for (int iteration = 0; iteration < maxIterations && System.nanoTime() < deadline; iteration++) {
+            current = parseOptimally(from, to, new Costs(current));
+            long size = getBlockSize(current, to - from);
+            if (size < bestSize) {
+                best = current;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+    // Finds the cheapest path from the start of the block to its end, where every literal and match costs what its
+    // symbols cost.
+    Symbols parseOptimally(int from, int to, Costs costs) {
+        int length = to - from;
+        float[] pathCosts = new float[length + 1];
+        int[] steps = new int[length + 1];
+        Arrays.fill(pathCosts, Float.POSITIVE_INFINITY);
+        pathCosts[0] = 0;
+        for (int i = 0; i < length; i++) {
+            float cost = pathCosts[i];
+            int position = from + i;
+            float literal = cost + costs.literals[data[position] & 0xFF];
+            if (literal < pathCosts[i + 1]) {
+                pathCosts[i + 1] = literal;
+                steps[i + 1] = 1;
+            }
+
+            int shorterLength = MIN_MATCH - 1;
+            for (int match = matchStarts[position - start]; match < matchStarts[position - start + 1] && shorterLength < to - position; match++) {
+                int matchLength = Math.min(matchLengths[match], to - position);
+                float distanceCost = cost + costs.getDistanceCost(matchDistances[match]);
+                for (int step = shorterLength + 1; step <= matchLength; step++) {
+                    float matchCost = distanceCost + costs.lengths[step];
+                    if (matchCost < pathCosts[i + step]) {
+                        pathCosts[i + step] = matchCost;
+                        steps[i + step] = step;
+                    }
+                }
+                shorterLength = matchLength;
+            }
+        }
+
+        int count = 0;
+        for (int i = length; i > 0; i -= steps[i]) {
+            count++;
+        }
+        int[] path = new int[count];
+        for (int i = length; i > 0; i -= steps[i]) {
+            path[--count] = steps[i];
+        }
+        Symbols symbols = new Symbols();
+        int position = from;
+        for (int step : path) {
+            if (step == 1) symbols.add(data[position] & 0xFF, 0);
+            else symbols.add(step, getDistance(position, step));
+            position += step;
+        }
+        return symbols;
+    }
+
+    // Splits the parse where it makes the estimated size of the blocks smaller, and returns the symbols the blocks after
+    // the first start at.
+    List<Integer> split(Symbols symbols) {
+        ArrayList<Integer> splits = new ArrayList<>();
+        split(symbols, 0, symbols.size, splits);
+        splits.sort(Comparator.naturalOrder());
+        return splits;
+    }
+    void split(Symbols symbols, int from, int to, List<Integer> splits) {
+        if (to - from < MIN_SPLIT_SYMBOLS * 2 || splits.size() >= MAX_BLOCKS - 1 || System.nanoTime() > deadline) return;
+
+        // Samples the possible splits and narrows the range around the best one until every split in it was tried.
+        int low = from + MIN_SPLIT_SYMBOLS;
+        int high = to - MIN_SPLIT_SYMBOLS;
+        int best = -1;
+        long bestSize = Long.MAX_VALUE;
+        while (low < high) {
+            int step = Math.max(1, (high - low) / (SPLIT_SAMPLES + 1));
+            for (int split = low; split <= high; split += step) {
+                long size = getBlockSize(symbols, from, split) + getBlockSize(symbols, split, to);
+                if (size < bestSize) {
+                    best = split;
+                    bestSize = size;
+                }
+            }
+            if (step == 1) break;
+            low = Math.max(from + MIN_SPLIT_SYMBOLS, best - step);
+            high = Math.min(to - MIN_SPLIT_SYMBOLS, best + step);
+        }
+        if (best < 0 || bestSize >= getBlockSize(symbols, from, to)) return;
+
+        splits.add(best);
+        split(symbols, from, best, splits);
+        split(symbols, best, to, splits);
+    }
+    long getBlockSize(Symbols symbols, int inputLength) {
+        return Math.min(getBlockSize(symbols, 0, symbols.size), getStoredSize(inputLength));
+    }
+    // The smaller of the sizes in bits of the symbols in a dynamic and in a fixed block.
+    static long getBlockSize(Symbols symbols, int from, int to) {
+        int[] literalCounts = new int[286];
+        int[] distanceCounts = new int[30];
+        long extraBits = symbols.count(from, to, literalCounts, distanceCounts);
+        int[] literalLengths = getCodeLengths(withTwoSymbols(literalCounts), 15);
+        int[] distanceLengths = getCodeLengths(withTwoSymbols(distanceCounts), 15);
+        long dynamic = 3 + writeCodeLengths(null, literalLengths, distanceLengths) + getDataSize(literalCounts, literalLengths, distanceCounts, distanceLengths);
+        long fixed = 3 + getDataSize(literalCounts, FIXED_LITERAL_LENGTHS, distanceCounts, FIXED_DISTANCE_LENGTHS);
+        return Math.min(dynamic, fixed) + extraBits;
+    }
+    static long getStoredSize(int inputLength) {
+        int blocks = Math.max(1, (inputLength + MAX_STORED_LENGTH - 1) / MAX_STORED_LENGTH);
+        return blocks * 40L + inputLength * 8L;
+    }
+    static long getDataSize(int[] literalCounts, int[] literalLengths, int[] distanceCounts, int[] distanceLengths) {
+        long size = 0;
+        for (int symbol = 0; symbol < literalCounts.length; symbol++) {
+            size += (long) literalCounts[symbol] * literalLengths[symbol];
+        }
+        for (int symbol = 0; symbol < distanceCounts.length; symbol++) {
+            size += (long) distanceCounts[symbol] * distanceLengths[symbol];
+        }
+        return size;
+    }
+
+    // Writes the block as a dynamic, fixed or stored block, whichever is smallest.
+    void writeBlock(BitWriter output, int from, int to, Symbols symbols, boolean last) {
+        int[] literalCounts = new int[286];
+        int[] distanceCounts = new int[30];
+        long extraBits = symbols.count(0, symbols.size, literalCounts, distanceCounts);
+        int[] literalLengths = getCodeLengths(withTwoSymbols(literalCounts), 15);
+        int[] distanceLengths = getCodeLengths(withTwoSymbols(distanceCounts), 15);
+        long dynamic = 3 + writeCodeLengths(null, literalLengths, distanceLengths) + getDataSize(literalCounts, literalLengths, distanceCounts, distanceLengths) + extraBits;
+        long fixed = 3 + getDataSize(literalCounts, FIXED_LITERAL_LENGTHS, distanceCounts, FIXED_DISTANCE_LENGTHS) + extraBits;
+
+        if (getStoredSize(to - from) < Math.min(dynamic, fixed)) {
+            for (int position = from; position < to; position += MAX_STORED_LENGTH) {
+                int length = Math.min(MAX_STORED_LENGTH, to - position);
+                output.write(last && position + length == to ? 1 : 0, 1);
+                output.write(0, 2);
+                output.alignToByte();
+                output.write(length, 16);
+                output.write(~length & 0xFFFF, 16);
+                output.writeBytes(data, position, length);
+            }
+            return;
+        }
+
+        output.write(last ? 1 : 0, 1);
+        if (dynamic < fixed) {
+            output.write(2, 2);
+            writeCodeLengths(output, literalLengths, distanceLengths);
+        }
+        else {
+            output.write(1, 2);
+            literalLengths = FIXED_LITERAL_LENGTHS;
+            distanceLengths = FIXED_DISTANCE_LENGTHS;
+        }
+        int[] literalCodes = getCodes(literalLengths);
+        int[] distanceCodes = getCodes(distanceLengths);
+        for (int i = 0; i < symbols.size; i++) {
+            int distance = symbols.distances[i];
+            if (distance == 0) {
+                int literal = symbols.values[i];
+                output.write(literalCodes[literal], literalLengths[literal]);
+                continue;
+            }
+            int length = symbols.values[i];
+            int lengthCode = LENGTH_CODES[length];
+            output.write(literalCodes[257 + lengthCode], literalLengths[257 + lengthCode]);
+            output.write(length - LENGTH_BASE[lengthCode], LENGTH_EXTRA[lengthCode]);
+            int distanceCode = DISTANCE_CODES[distance];
+            output.write(distanceCodes[distanceCode], distanceLengths[distanceCode]);
+            output.write(distance - DISTANCE_BASE[distanceCode], DISTANCE_EXTRA[distanceCode]);
+        }
+        output.write(literalCodes[256], literalLengths[256]);
+    }
+    // Writes the code lengths of a dynamic block, or only counts their bits if there is no output. Every combination
+    // of the three repeat codes is tried, since leaving one out sometimes gives a smaller code length code.
+    static long writeCodeLengths(BitWriter output, int[] literalLengths, int[] distanceLengths) {
+        int literalCount = 286;
+        while (literalCount > 257 && literalLengths[literalCount - 1] == 0) {
+            literalCount--;
+        }
+        int distanceCount = 30;
+        while (distanceCount > 1 && distanceLengths[distanceCount - 1] == 0) {
+            distanceCount--;
+        }
+        int[] lengths = new int[literalCount + distanceCount];
+        System.arraycopy(literalLengths, 0, lengths, 0, literalCount);
+        System.arraycopy(distanceLengths, 0, lengths, literalCount, distanceCount);
+
+        long bestSize = Long.MAX_VALUE;
+        int bestRepeats = 0;
+        for (int repeats = 0; repeats < 8; repeats++) {
+            long size = writeCodeLengths(null, lengths, literalCount, distanceCount, repeats);
+            if (size < bestSize) {
+                bestSize = size;
+                bestRepeats = repeats;
+            }
+        }
+        if (output != null) writeCodeLengths(output, lengths, literalCount, distanceCount, bestRepeats);
+        return bestSize;
+    }
+    // The bits of repeats say whether code 16, 17 and 18 are used.
+    static long writeCodeLengths(BitWriter output, int[] lengths, int literalCount, int distanceCount, int repeats) {
+        boolean use16 = (repeats & 1) != 0;
+        boolean use17 = (repeats & 2) != 0;
+        boolean use18 = (repeats & 4) != 0;
+        int[] codes = new int[lengths.length];
+        int[] extras = new int[lengths.length];
+        int count = 0;
+        for (int i = 0; i < lengths.length; ) {
+            int value = lengths[i];
+            int run = 1;
+            while (i + run < lengths.length && lengths[i + run] == value) {
+                run++;
+            }
+            i += run;
+
+            if (value == 0) {
+                while (use18 && run >= 11) {
+                    int repeat = Math.min(run, 138);
+                    codes[count] = 18;
+                    extras[count++] = repeat - 11;
+                    run -= repeat;
+                }
+                while (use17 && run >= 3) {
+                    int repeat = Math.min(run, 10);
+                    codes[count] = 17;
+                    extras[count++] = repeat - 3;
+                    run -= repeat;
+                }
+            }
+            if (use16 && run >= 4) {
+                codes[count++] = value;
+                run--;
+                while (run >= 3) {
+                    int repeat = Math.min(run, 6);
+                    codes[count] = 16;
+                    extras[count++] = repeat - 3;
+                    run -= repeat;
+                }
+            }
+            while (run > 0) {
+                codes[count++] = value;
+                run--;
+            }
+        }
+
+        int[] codeCounts = new int[19];
+        for (int i = 0; i < count; i++) {
+            codeCounts[codes[i]]++;
+        }
+        int[] codeLengths = getCodeLengths(codeCounts, 7);
+        int codeLengthCount = 19;
+        while (codeLengthCount > 4 && codeLengths[CODE_LENGTH_ORDER[codeLengthCount - 1]] == 0) {
+            codeLengthCount--;
+        }
+
+        long size = 14 + codeLengthCount * 3L;
+        for (int code = 0; code < 19; code++) {
+            size += (long) codeCounts[code] * codeLengths[code];
+        }
+        size += codeCounts[16] * 2L + codeCounts[17] * 3L + codeCounts[18] * 7L;
+        if (output == null) return size;
+
+        output.write(literalCount - 257, 5);
+        output.write(distanceCount - 1, 5);
+        output.write(codeLengthCount - 4, 4);
+        for (int i = 0; i < codeLengthCount; i++) {
+            output.write(codeLengths[CODE_LENGTH_ORDER[i]], 3);
+        }
+        int[] lengthCodes = getCodes(codeLengths);
+        for (int i = 0; i < count; i++) {
+            output.write(lengthCodes[codes[i]], codeLengths[codes[i]]);
+            if (codes[i] == 16) output.write(extras[i], 2);
+            else if (codes[i] == 17) output.write(extras[i], 3);
+            else if (codes[i] == 18) output.write(extras[i], 7);
+        }
+        return size;
+    }
+
+    // Some inflaters reject codes with a single symbol, so codes always get two.
+    static int[] withTwoSymbols(int[] counts) {
+        int used = 0;
+        for (int count : counts) {
+            if (count > 0) used++;
+        }
+        if (used >= 2) return counts;
+        int[] patched = counts.clone();
+        for (int symbol = 0; symbol < patched.length && used < 2; symbol++) {
+            if (patched[symbol] == 0) {
+                patched[symbol] = 1;
+                used++;
+            }
+        }
+        return patched;
+    }
+    // The optimal code lengths of at most maxBits bits for the counts, found with the boundary package-merge algorithm
+    // of Katajainen, Moffat and Turpin.
+    static int[] getCodeLengths(int[] counts, int maxBits) {
+        int[] lengths = new int[counts.length];
+        int used = 0;
+        for (int count : counts) {
+            if (count > 0) used++;
+        }
+        Leaf[] leaves = new Leaf[used];
+        used = 0;
+        for (int symbol = 0; symbol < counts.length; symbol++) {
+            if (counts[symbol] > 0) leaves[used++] = new Leaf(counts[symbol], symbol);
+        }
+        if (used == 0) return lengths;
+        if (used <= 2) {
+            for (Leaf leaf : leaves) {
+                lengths[leaf.symbol] = 1;
+            }
+            return lengths;
+        }
+        // Leaves with the same weight keep the order of their symbols.
+        Arrays.sort(leaves, Comparator.comparingLong((Leaf leaf) -> leaf.weight));
+        maxBits = Math.min(maxBits, used - 1);
+
+        Node[][] lists = new Node[maxBits][2];
+        for (int i = 0; i < maxBits; i++) {
+            lists[i][0] = new Node(leaves[0].weight, 1, null);
+            lists[i][1] = new Node(leaves[1].weight, 2, null);
+        }
+        for (int i = 0; i < 2 * used - 5; i++) {
+            packageMerge(lists, leaves, maxBits - 1);
+        }
+        // The last run only needs the chain of the last list.
+        int lastCount = lists[maxBits - 1][1].count;
+        long sum = lists[maxBits - 2][0].weight + lists[maxBits - 2][1].weight;
+        if (lastCount < leaves.length && sum > leaves[lastCount].weight) lists[maxBits - 1][1] = new Node(0, lastCount + 1, lists[maxBits - 1][1].tail);
+        else lists[maxBits - 1][1].tail = lists[maxBits - 2][1];
+
+        // Every node of the chain counts how many of the lightest leaves have at least one more bit.
+        int[] leafCounts = new int[maxBits + 1];
+        int chainLength = 0;
+        for (Node node = lists[maxBits - 1][1]; node != null; node = node.tail) {
+            leafCounts[chainLength++] = node.count;
+        }
+        int leaf = leafCounts[0];
+        for (int i = 1, bits = 1; i <= chainLength; i++, bits++) {
+            int next = i < chainLength ? leafCounts[i] : 0;
+            for (; leaf > next; leaf--) {
+                lengths[leaves[leaf - 1].symbol] = bits;
+            }
+        }
+        return lengths;
+    }
+    static void packageMerge(Node[][] lists, Leaf[] leaves, int index) {
+        int lastCount = lists[index][1].count;
+        if (index == 0 && lastCount >= leaves.length) return;
+
+        Node previous = lists[index][1];
+        lists[index][0] = previous;
+        if (index == 0) {
+            lists[index][1] = new Node(leaves[lastCount].weight, lastCount + 1, null);
+            return;
+        }
+        long sum = lists[index - 1][0].weight + lists[index - 1][1].weight;
+        if (lastCount < leaves.length && leaves[lastCount].weight < sum) {
+            lists[index][1] = new Node(leaves[lastCount].weight, lastCount + 1, previous.tail);
+        }
+        else {
+            lists[index][1] = new Node(sum, lastCount, lists[index - 1][1]);
+            packageMerge(lists, leaves, index - 1);
+            packageMerge(lists, leaves, index - 1);
+        }
+    }
+    // The canonical codes of the lengths, with their bits reversed since DEFLATE writes codes from their highest bit.
+    static int[] getCodes(int[] lengths) {
+        int[] lengthCounts = new int[16];
+        for (int length : lengths) {
+            lengthCounts[length]++;
+        }
+        lengthCounts[0] = 0;
+        int[] nextCodes = new int[16];
+        int code = 0;
+        for (int bits = 1; bits < 16; bits++) {
+            code = (code + lengthCounts[bits - 1]) << 1;
+            nextCodes[bits] = code;
+        }
+        int[] codes = new int[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] > 0) codes[symbol] = Integer.reverse(nextCodes[lengths[symbol]]++) >>> (32 - lengths[symbol]);
+        }
+        return codes;
+    }
+
+    // Literals, and matches as a length and a distance, in the order they are written.
+    static class Symbols {
+        int[] values = new int[1 << 10];
+        int[] distances = new int[1 << 10];
+        int size;
+
+        void add(int value, int distance) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            values[size] = value;
+            distances[size] = distance;
+            size++;
+        }
+        int getLength(int symbol) {
+            return distances[symbol] == 0 ? 1 : values[symbol];
+        }
+        // Counts the symbols of the range, with the end of the block, and returns the extra bits they need.
+        long count(int from, int to, int[] literalCounts, int[] distanceCounts) {
+            long extraBits = 0;
+            for (int i = from; i < to; i++) {
+                if (distances[i] == 0) {
+                    literalCounts[values[i]]++;
+                    continue;
+                }
+                int lengthCode = LENGTH_CODES[values[i]];
+                int distanceCode = DISTANCE_CODES[distances[i]];
+                literalCounts[257 + lengthCode]++;
+                distanceCounts[distanceCode]++;
+                extraBits += LENGTH_EXTRA[lengthCode] + DISTANCE_EXTRA[distanceCode];
+            }
+            literalCounts[256]++;
+            return extraBits;
+        }
+    }
+
+    // The cost in bits of every literal, length and distance, estimated from how often a parse used their symbols.
+    static class Costs {
+        float[] literals = new float[256];
+        float[] lengths = new float[MAX_MATCH + 1];
+        float[] distanceCodes = new float[30];
+
+        float getDistanceCost(int distance) {
+            return distanceCodes[DISTANCE_CODES[distance]];
+        }
+
+        Costs(Symbols symbols) {
+            int[] literalCounts = new int[286];
+            int[] distanceCounts = new int[30];
+            symbols.count(0, symbols.size, literalCounts, distanceCounts);
+            float[] literalCosts = getCosts(literalCounts);
+            float[] distanceCosts = getCosts(distanceCounts);
+            System.arraycopy(literalCosts, 0, literals, 0, 256);
+            for (int length = MIN_MATCH; length <= MAX_MATCH; length++) {
+                int code = LENGTH_CODES[length];
+                lengths[length] = literalCosts[257 + code] + LENGTH_EXTRA[code];
+            }
+            for (int code = 0; code < 30; code++) {
+                distanceCodes[code] = distanceCosts[code] + DISTANCE_EXTRA[code];
+            }
+        }
+
+        // Symbols that were not used cost as much as one that was used once.
+        static float[] getCosts(int[] counts) {
+            long total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            float[] costs = new float[counts.length];
+            double totalBits = Math.log(Math.max(1, total)) / Math.log(2);
+            for (int symbol = 0; symbol < counts.length; symbol++) {
+                costs[symbol] = (float) (totalBits - (counts[symbol] > 0 ? Math.log(counts[symbol]) / Math.log(2) : 0));
+            }
+            return costs;
+        }
+    }
+
+    static class Leaf {
+        long weight;
+        int symbol;
+
+        Leaf(long weight, int symbol) {
+            this.weight = weight;
+            this.symbol = symbol;
+        }
+    }
+
+    static class Node {
+        long weight;
+        int count;
+        Node tail;
+
+        Node(long weight, int count, Node tail) {
+            this.weight = weight;
+            this.count = count;
+            this.tail = tail;
+        }
+    }
+
+    // Writes bits from the lowest one up, the way DEFLATE packs them into bytes.
+    static class BitWriter {
+        byte[] bytes;
+        int length;
+        long buffer;
+        int bufferedBits;
+
+        void write(int value, int bits) {
+            buffer |= (long) (value & ((1 << bits) - 1)) << bufferedBits;
+            bufferedBits += bits;
+            while (bufferedBits >= 8) {
+                writeByte((int) buffer);
+                buffer >>>= 8;
+                bufferedBits -= 8;
+            }
+        }
+        void alignToByte() {
+            if (bufferedBits > 0) write(0, 8 - bufferedBits);
+        }
+        // Only called once aligned.
+        void writeBytes(byte[] source, int offset, int count) {
+            if (length + count > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+        void writeByte(int value) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[length++] = (byte) value;
+        }
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        BitWriter(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+    }
+
+    ExhaustiveDeflater(byte[] data, int start, int maxIterations, long deadline) {
+        this.data = data;
+        this.start = start;
+        this.end = data.length;
+        this.maxIterations = maxIterations;
+        this.deadline = deadline;
+    }
+}
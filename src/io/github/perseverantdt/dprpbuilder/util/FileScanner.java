@@ -0,0 +1,59 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+
+// Finds the files of a pack in a single walk of its folder. The attributes read by the walk are kept in the entries, so
+// no file is stat'ed again before it is built.
+public class FileScanner {
+    HashSet<String> extensions;
+
+    // Returns an entry for every file under root with one of the scanner's extensions, named by its path relative to
+    // root, with '/' as the separator, after the prefix.
+    public List<PackEntry> scan(Path root, String prefix) throws IOException {
+        ArrayList<PackEntry> entries = new ArrayList<>();
+        // Every visited path starts with the root as it was given, so cutting it off is cheaper than relativize().
+        String rootString = root.toString();
+        int rootLength = rootString.endsWith(File.separator) ? rootString.length() : rootString.length() + 1;
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && extensions.contains(getExtension(file))) {
+                    String name = prefix + file.toString().substring(rootLength).replace(File.separatorChar, '/');
+                    entries.add(new PackEntry(name, file, null, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            // A file that cannot be read would be missing from the pack, so the build fails instead.
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                throw e;
+            }
+        });
+        return entries;
+    }
+
+    static String getExtension(Path file) {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1);
+    }
+
+    public static FileScanner forExtensions(String... extensions) {
+        return new FileScanner(new HashSet<>(List.of(extensions)));
+    }
+
+    FileScanner(HashSet<String> extensions) {
+        this.extensions = extensions;
+    }
+}
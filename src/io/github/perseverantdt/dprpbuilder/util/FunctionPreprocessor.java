@@ -0,0 +1,413 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Rewrites the functions of a datapack so that the server runs fewer commands. Every .mcfunction file is expanded
+// first: "#!define NAME value" defines a constant for the rest of the file, "#!for i in 0..3" or "#!for color in red
+// green blue" repeats the lines up to "#!end" once per value, and ${...} is replaced by a constant, a loop variable or
+// integer arithmetic on them, like ${i * 2 + 1}. Comments and empty lines are dropped. Then, calls to functions with at
+// most one command are replaced by that command, and functions and function tags that cannot be reached from
+// #minecraft:tick, #minecraft:load, advancement rewards or the configured entry functions are left out of the pack.
+public class FunctionPreprocessor {
+    static final List<String> DEFAULT_ENTRY_FUNCTIONS = List.of("#minecraft:tick", "#minecraft:load");
+    // Calls can also be in JSON text, like the "/function ns:menu" of a click event, and a macro line can call a function
+    // whose name ends in $(argument).
+    static final Pattern CALL = Pattern.compile("(?:^\\$?|[\\s/\"])function\\s+(#?[a-z0-9_.\\-]*(?::[a-z0-9_.\\-/]*)?)(\\$\\()?");
+    // Calls whose result is stored are left alone, since a function call does not give the same result as the command
+    // it runs.
+    static final Pattern INLINABLE_CALL = Pattern.compile("^(execute (?!.*\\bstore\\b).* run )?function ([a-z0-9_.\\-]+(?::[a-z0-9_.\\-/]+)?)$");
+    static final Pattern CONSTANT_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    static final Pattern LOOP = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s+in\\s+(.+)");
+    // Chains of one-command functions are inlined one level per pass.
+    static final int MAX_INLINE_PASSES = 8;
+    static final int MAX_EXPANDED_LINES = 1 << 16;
+
+    List<String> entryFunctions;
+    BuildMetrics metrics;
+    int inlinedCalls;
+    int removedFunctions;
+
+    public int getInlinedCalls() {
+        return inlinedCalls;
+    }
+    public int getRemovedFunctions() {
+        return removedFunctions;
+    }
+
+    // Expands every function on the pool, then inlines calls and leaves out unreachable functions and function tags.
+    public List<PackEntry> process(List<PackEntry> entries, ForkJoinPool pool) throws IOException {
+        List<PackEntry> expanded = EntryTransform.apply(entries, pool, entry -> getFunctionId(entry.getName()) != null, this::expand);
+
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        LinkedHashMap<String, List<String>> functions = new LinkedHashMap<>();
+        HashMap<String, List<String>> tags = new HashMap<>();
+        ArrayList<String> roots = new ArrayList<>(DEFAULT_ENTRY_FUNCTIONS);
+        for (String entryFunction : entryFunctions) {
+            roots.add(ResourceIndex.normalize(entryFunction));
+        }
+        for (PackEntry entry : expanded) {
+            String functionId = getFunctionId(entry.getName());
+            String tagId = getTagId(entry.getName());
+            if (functionId != null) {
+                // Expanded functions have no empty lines.
+                String content = new String(entry.getContent(), StandardCharsets.UTF_8);
+                functions.put(functionId, content.isEmpty() ? new ArrayList<>() : new ArrayList<>(List.of(content.split("\n"))));
+            }
+            else if (tagId != null) {
+                tags.put(tagId, readTagValues(entry));
+            }
+            else if (isAdvancement(entry.getName())) {
+                String reward = readRewardFunction(entry);
+                if (reward != null) roots.add(ResourceIndex.normalize(reward));
+            }
+        }
+
+        inline(functions);
+        HashSet<String> reachable = findReachable(roots, functions, tags);
+        if (functions.keySet().stream().noneMatch(reachable::contains)) {
+            // Leaving out every function would only break a pack whose entry functions are missing from the settings.
+            System.out.println("No function of the datapack can be reached from its entry functions. Every function is kept.");
+            reachable.addAll(functions.keySet());
+            reachable.addAll(tags.keySet());
+        }
+
+        ArrayList<PackEntry> processed = new ArrayList<>(expanded.size());
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for (PackEntry entry : expanded) {
+            String functionId = getFunctionId(entry.getName());
+            String tagId = getTagId(entry.getName());
+            if (functionId != null) {
+                bytesIn += entry.getSize();
+                if (!reachable.contains(functionId)) {
+                    removedFunctions++;
+                    continue;
+                }
+                StringBuilder content = new StringBuilder();
+                for (String command : functions.get(functionId)) {
+                    content.append(command).append('\n');
+                }
+                PackEntry function = entry.withContent(content.toString().getBytes(StandardCharsets.UTF_8));
+                bytesOut += function.getSize();
+                processed.add(function);
+            }
+            else if (tagId == null || reachable.contains(tagId)) {
+                processed.add(entry);
+            }
+        }
+        span.end(functions.size(), bytesIn, bytesOut);
+        return processed;
+    }
+    public PackEntry expand(PackEntry entry) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        String text = new String(entry.isInMemory() ? entry.getContent() : Files.readAllBytes(entry.getSource()), StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) text = text.substring(1);
+        List<String> lines = List.of(text.split("\r?\n", -1));
+        ArrayList<String> commands = new ArrayList<>();
+        expand(entry.getName(), lines, 0, lines.size(), new HashMap<>(), commands);
+
+        StringBuilder content = new StringBuilder();
+        for (String command : commands) {
+            content.append(command).append('\n');
+        }
+        PackEntry expanded = entry.withContent(content.toString().getBytes(StandardCharsets.UTF_8));
+        span.end(entry.getName(), entry.getSize(), expanded.getSize());
+        return expanded;
+    }
+
+    void inline(Map<String, List<String>> functions) {
+        for (int pass = 0; pass < MAX_INLINE_PASSES; pass++) {
+            boolean changed = false;
+            for (Map.Entry<String, List<String>> function : functions.entrySet()) {
+                List<String> commands = function.getValue();
+                for (int i = 0; i < commands.size(); i++) {
+                    Matcher call = INLINABLE_CALL.matcher(commands.get(i));
+                    if (!call.matches()) continue;
+                    String callee = ResourceIndex.normalize(call.group(2));
+                    List<String> calleeCommands = functions.get(callee);
+                    if (callee.equals(function.getKey()) || calleeCommands == null || calleeCommands.size() > 1 || (calleeCommands.size() == 1 && !isInlinable(calleeCommands.get(0)))) continue;
+
+                    // Calling an empty function does nothing, with or without the conditions of execute.
+                    if (calleeCommands.isEmpty()) commands.remove(i--);
+                    else commands.set(i, (call.group(1) != null ? call.group(1) : "") + calleeCommands.get(0));
+                    inlinedCalls++;
+                    changed = true;
+                }
+            }
+            if (!changed) return;
+        }
+    }
+
+    // A return would leave the caller instead of the callee, and a macro line needs the arguments the callee was called
+    // with.
+    static boolean isInlinable(String command) {
+        return !command.startsWith("$") && !command.equals("return") && !command.startsWith("return ");
+    }
+    static HashSet<String> findReachable(List<String> roots, Map<String, List<String>> functions, Map<String, List<String>> tags) {
+        HashSet<String> reachable = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        for (String root : roots) {
+            if (reachable.add(root)) queue.add(root);
+        }
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            ArrayList<String> references = new ArrayList<>();
+            if (id.startsWith("#")) {
+                references.addAll(tags.getOrDefault(id, List.of()));
+            }
+            else {
+                for (String command : functions.getOrDefault(id, List.of())) {
+                    Matcher call = CALL.matcher(command);
+                    while (call.find()) {
+                        if (call.group(2) != null && command.startsWith("$")) addMacroCallees(call.group(1), functions, tags, references);
+                        else if (!call.group(1).isEmpty()) references.add(ResourceIndex.normalize(call.group(1)));
+                    }
+                }
+            }
+            for (String reference : references) {
+                if (reachable.add(reference)) queue.add(reference);
+            }
+        }
+        return reachable;
+    }
+    // The function a macro line calls is only known when it runs, so every function or function tag whose ID starts with
+    // the part of the name before $( is kept. Without a namespace, that part could also be the start of one.
+    static void addMacroCallees(String prefix, Map<String, List<String>> functions, Map<String, List<String>> tags, List<String> references) {
+        boolean tag = prefix.startsWith("#");
+        String name = tag ? prefix.substring(1) : prefix;
+        List<String> prefixes = name.indexOf(':') >= 0 ? List.of(prefix) : List.of(prefix, (tag ? "#" : "") + "minecraft:" + name);
+        for (String id : (tag ? tags : functions).keySet()) {
+            for (String idPrefix : prefixes) {
+                if (id.startsWith(idPrefix)) {
+                    references.add(id);
+                    break;
+                }
+            }
+        }
+    }
+    // Expands the lines from start to end, not including end, into commands. Constants defined in a loop stay defined
+    // after it, while the loop variable is only defined in the loop.
+    static void expand(String name, List<String> lines, int start, int end, HashMap<String, String> constants, List<String> commands) throws IOException {
+        for (int i = start; i < end; i++) {
+            String line = lines.get(i).strip();
+            if (line.startsWith("#!define ")) {
+                String definition = line.substring("#!define ".length()).strip();
+                int separator = definition.indexOf(' ');
+                String constant = separator < 0 ? definition : definition.substring(0, separator);
+                if (!CONSTANT_NAME.matcher(constant).matches()) throw error(name, i, "Invalid constant name: " + constant);
+                constants.put(constant, separator < 0 ? "" : substitute(name, i, definition.substring(separator + 1).strip(), constants));
+            }
+            else if (line.startsWith("#!for ")) {
+                Matcher loop = LOOP.matcher(line.substring("#!for ".length()).strip());
+                if (!loop.matches()) throw error(name, i, "Loops must be written as #!for name in from..to or #!for name in value value...");
+                int loopEnd = findLoopEnd(name, lines, i, end);
+                String variable = loop.group(1);
+                String previous = constants.get(variable);
+                for (String value : getLoopValues(name, i, substitute(name, i, loop.group(2), constants), constants)) {
+                    constants.put(variable, value);
+                    expand(name, lines, i + 1, loopEnd, constants, commands);
+                }
+                if (previous != null) constants.put(variable, previous);
+                else constants.remove(variable);
+                i = loopEnd;
+            }
+            else if (line.equals("#!end")) {
+                throw error(name, i, "#!end without #!for");
+            }
+            else if (line.startsWith("#!")) {
+                throw error(name, i, "Unknown directive: " + line);
+            }
+            else if (!line.isEmpty() && !line.startsWith("#")) {
+                if (commands.size() == MAX_EXPANDED_LINES) throw error(name, i, "The function expands to more than " + MAX_EXPANDED_LINES + " commands.");
+                commands.add(substitute(name, i, line, constants));
+            }
+        }
+    }
+    static int findLoopEnd(String name, List<String> lines, int loopStart, int end) throws IOException {
+        int depth = 0;
+        for (int i = loopStart + 1; i < end; i++) {
+            String line = lines.get(i).strip();
+            if (line.startsWith("#!for ")) depth++;
+            else if (line.equals("#!end") && depth-- == 0) return i;
+        }
+        throw error(name, loopStart, "#!for without #!end");
+    }
+    static List<String> getLoopValues(String name, int line, String values, Map<String, String> constants) throws IOException {
+        int range = values.indexOf("..");
+        ArrayList<String> loopValues = new ArrayList<>();
+        if (range < 0) {
+            loopValues.addAll(List.of(values.strip().split("\\s+")));
+            return loopValues;
+        }
+
+        // Ranges include both ends and count down if the first is larger.
+        long from = evaluate(name, line, values.substring(0, range), constants);
+        long to = evaluate(name, line, values.substring(range + 2), constants);
+        if (Math.abs(to - from) >= MAX_EXPANDED_LINES) throw error(name, line, "The loop repeats more than " + MAX_EXPANDED_LINES + " times.");
+        long step = from <= to ? 1 : -1;
+        for (long value = from; value != to + step; value += step) {
+            loopValues.add(Long.toString(value));
+        }
+        return loopValues;
+    }
+    static String substitute(String name, int line, String text, Map<String, String> constants) throws IOException {
+        int start = text.indexOf("${");
+        if (start < 0) return text;
+
+        StringBuilder output = new StringBuilder(text.length());
+        int copied = 0;
+        while (start >= 0) {
+            int end = text.indexOf('}', start);
+            if (end < 0) throw error(name, line, "${ without }");
+            String expression = text.substring(start + 2, end).strip();
+            output.append(text, copied, start);
+            String constant = constants.get(expression);
+            output.append(constant != null ? constant : Long.toString(evaluate(name, line, expression, constants)));
+            copied = end + 1;
+            start = text.indexOf("${", copied);
+        }
+        return output.append(text, copied, text.length()).toString();
+    }
+    static long evaluate(String name, int line, String expression, Map<String, String> constants) throws IOException {
+        try {
+            Expression parser = new Expression(expression, constants);
+            long value = parser.parseSum();
+            if (parser.position < expression.length()) throw new IllegalArgumentException("Unexpected " + expression.substring(parser.position).strip());
+            return value;
+        }
+        catch (IllegalArgumentException | ArithmeticException e) {
+            throw error(name, line, "Could not evaluate " + expression.strip() + ": " + e.getMessage());
+        }
+    }
+    static IOException error(String name, int line, String message) {
+        return new IOException(String.format("Invalid function in %1$s at line %2$d: %3$s", name, line + 1, message));
+    }
+    static List<String> readTagValues(PackEntry entry) throws IOException {
+        ArrayList<String> values = new ArrayList<>();
+        JsonElement tag = readJson(entry);
+        JsonElement tagValues = tag.isJsonObject() ? tag.getAsJsonObject().get("values") : null;
+        if (tagValues == null || !tagValues.isJsonArray()) return values;
+        for (JsonElement value : (JsonArray) tagValues) {
+            if (value.isJsonObject() && value.getAsJsonObject().has("id")) value = value.getAsJsonObject().get("id");
+            if (value.isJsonPrimitive()) values.add(ResourceIndex.normalize(value.getAsString()));
+        }
+        return values;
+    }
+    static String readRewardFunction(PackEntry entry) throws IOException {
+        JsonElement advancement = readJson(entry);
+        if (!advancement.isJsonObject()) return null;
+        JsonElement rewards = advancement.getAsJsonObject().get("rewards");
+        if (rewards == null || !rewards.isJsonObject()) return null;
+        JsonElement function = ((JsonObject) rewards).get("function");
+        return function != null && function.isJsonPrimitive() ? function.getAsString() : null;
+    }
+    static JsonElement readJson(PackEntry entry) throws IOException {
+        String json = new String(entry.isInMemory() ? entry.getContent() : Files.readAllBytes(entry.getSource()), StandardCharsets.UTF_8);
+        try {
+            return JsonParser.parseString(json.startsWith("\uFEFF") ? json.substring(1) : json);
+        }
+        catch (JsonParseException e) {
+            throw new IOException(String.format("Invalid JSON in %1$s: %2$s", entry.getName(), e.getMessage()), e);
+        }
+    }
+    // Returns the ID of the function in a file like data/namespace/function/path.mcfunction, or functions/ before 1.21,
+    // or null for other files.
+    static String getFunctionId(String name) {
+        return name.endsWith(".mcfunction") && "function".equals(ResourceIndex.getRegistry(name)) ? ResourceIndex.getId(name) : null;
+    }
+    static String getTagId(String name) {
+        return name.endsWith(".json") && "tags/function".equals(ResourceIndex.getRegistry(name)) ? "#" + ResourceIndex.getId(name) : null;
+    }
+    static boolean isAdvancement(String name) {
+        return name.endsWith(".json") && "advancement".equals(ResourceIndex.getRegistry(name));
+    }
+
+    // Integer arithmetic with +, -, *, /, % and parentheses, where names stand for constants with integer values.
+    static class Expression {
+        String text;
+        Map<String, String> constants;
+        int position;
+
+        long parseSum() {
+            long value = parseProduct();
+            while (true) {
+                if (accept('+')) value = Math.addExact(value, parseProduct());
+                else if (accept('-')) value = Math.subtractExact(value, parseProduct());
+                else return value;
+            }
+        }
+        long parseProduct() {
+            long value = parseValue();
+            while (true) {
+                if (accept('*')) value = Math.multiplyExact(value, parseValue());
+                else if (accept('/')) value = value / parseValue();
+                else if (accept('%')) value = value % parseValue();
+                else return value;
+            }
+        }
+        long parseValue() {
+            if (accept('-')) return Math.negateExact(parseValue());
+            if (accept('(')) {
+                long value = parseSum();
+                if (!accept(')')) throw new IllegalArgumentException("Missing )");
+                return value;
+            }
+
+            skipSpaces();
+            int start = position;
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                position++;
+            }
+            String token = text.substring(start, position);
+            if (token.isEmpty()) throw new IllegalArgumentException(position < text.length() ? "Unexpected " + text.charAt(position) : "Unexpected end");
+            if (Character.isDigit(token.charAt(0))) return Long.parseLong(token);
+
+            String constant = constants.get(token);
+            if (constant == null) throw new IllegalArgumentException("Unknown constant " + token);
+            return Long.parseLong(constant.strip());
+        }
+        boolean accept(char operator) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == operator) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        void skipSpaces() {
+            while (position < text.length() && text.charAt(position) == ' ') {
+                position++;
+            }
+        }
+
+        Expression(String text, Map<String, String> constants) {
+            this.text = text;
+            this.constants = constants;
+        }
+    }
+
+    // With no entry functions, only functions reachable from #minecraft:tick, #minecraft:load and advancement rewards
+    // are kept.
+    public FunctionPreprocessor(List<String> entryFunctions, BuildMetrics metrics) {
+        this.entryFunctions = entryFunctions;
+        this.metrics = metrics;
+    }
+}
@@ -1,56 +1,48 @@
 package io.github.perseverantdt.dprpbuilder.util;
 
-import org.jetbrains.annotations.NotNull;
-
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.stream.Stream;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
 public class InputOutput {
-    public static Path @NotNull [] getFiles(Path targetFolder, boolean recursive) {
-        ArrayList<Path> files = new ArrayList<>();
-        LinkedList<Path> folderPaths = new LinkedList<>();
-        folderPaths.push(targetFolder);
-
-        while (!folderPaths.isEmpty()) {
-            Path folderPath = folderPaths.pollFirst();
-            try (Stream<Path> children = Files.list(folderPath)) {
-                children.forEach(child -> {
-                    if (Files.isRegularFile(child)) files.add(child);
-                    else if (Files.isDirectory(child) && recursive) folderPaths.push(child);
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
-                return new Path[0];
+    // Deletes everything inside the folder in one walk, keeping the folder itself.
+    public static void deleteContents(Path folder) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) throw e;
+                if (!dir.equals(folder)) Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
             }
+        });
+    }
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
         }
-
-        return files.toArray(new Path[0]);
+        return hex.toString();
     }
-    public static Path @NotNull [] getFolders(Path targetFolder, boolean recursive) {
-        ArrayList<Path> checkedFolders = new ArrayList<>();
-        LinkedList<Path> foldersToCheck = new LinkedList<>();
-        foldersToCheck.push(targetFolder);
-
-        while (!foldersToCheck.isEmpty()) {
-            Path folderToCheck = foldersToCheck.pollFirst();
-            try (Stream<Path> children = Files.list(folderToCheck)) {
-                children.forEach(child -> {
-                    if (Files.isDirectory(child)) {
-                        checkedFolders.add(child);
-                        if (recursive) foldersToCheck.push(child);
-                    }
-                });
-            }
-            catch (IOException e) {
-                e.printStackTrace();
-                return new Path[0];
-            }
+    public static Path getTempSibling(Path target) {
+        Path absoluteTarget = target.toAbsolutePath();
+        return absoluteTarget.resolveSibling("." + absoluteTarget.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+    }
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
-
-        return checkedFolders.toArray(new Path[0]);
     }
 }
@@ -0,0 +1,95 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Rewrites JSON files without the whitespace between their tokens. Files are streamed one token at a time instead of
+// being parsed into a tree, and reading them this way also checks their syntax, so an invalid file fails the build
+// instead of failing to load in the game.
+public class JsonMinifier {
+    // Minifies every .json and .mcmeta file of the pack on the pool. Minified files are kept in memory, while files that
+    // would not get smaller are left as they are.
+    public static List<PackEntry> minify(List<PackEntry> entries, ForkJoinPool pool, BuildMetrics metrics) throws IOException {
+        return EntryTransform.apply(entries, pool, entry -> !entry.isInMemory() && isJson(entry.getName()), entry -> minify(entry, metrics));
+    }
+    public static PackEntry minify(PackEntry entry, BuildMetrics metrics) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        byte[] content;
+        try (BufferedReader reader = Files.newBufferedReader(entry.getSource(), StandardCharsets.UTF_8)) {
+            // JsonReader does not skip byte order marks, which some editors still write.
+            reader.mark(1);
+            if (reader.read() != '\uFEFF') reader.reset();
+            content = minify(reader, entry.getName(), (int) entry.getSize());
+        }
+        span.end(entry.getName(), entry.getSize(), content.length);
+
+        return content.length < entry.getSize() ? entry.withContent(content) : entry;
+    }
+    public static byte[] minify(Reader json, String name, int sizeHint) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(32, sizeHint));
+        try (JsonReader reader = new JsonReader(json); JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            copy(reader, writer);
+        }
+        catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            throw new IOException(String.format("Invalid JSON in %1$s: %2$s", name, e.getMessage()), e);
+        }
+        return output.toByteArray();
+    }
+    public static boolean isJson(String name) {
+        return name.endsWith(".json") || name.endsWith(".mcmeta");
+    }
+
+    static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+        while (true) {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    writer.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    writer.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    writer.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    writer.endObject();
+                    break;
+                case NAME:
+                    writer.name(reader.nextName());
+                    break;
+                case STRING:
+                    writer.value(reader.nextString());
+                    break;
+                case NUMBER:
+                    // Numbers are copied as they are written, so that no precision is lost on the way.
+                    writer.jsonValue(reader.nextString());
+                    break;
+                case BOOLEAN:
+                    writer.value(reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    writer.nullValue();
+                    break;
+                case END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class PackEntry {
+    String name;
+    Path source;
+    byte[] content;
+    long size;
+    long lastModified;
+
+    public String getName() {
+        return name;
+    }
+    public Path getSource() {
+        return source;
+    }
+    public byte[] getContent() {
+        return content;
+    }
+    public long getSize() {
+        return size;
+    }
+    public long getLastModified() {
+        return lastModified;
+    }
+    public boolean isInMemory() {
+        return content != null;
+    }
+    // The same file with its content replaced, for example after it was minified. The source is kept for error messages
+    // and the modification time for incremental builds.
+    public PackEntry withContent(byte[] content) {
+        return new PackEntry(name, source, content, content.length, lastModified);
+    }
+
+    public static PackEntry ofFile(String name, Path source) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return new PackEntry(name, source, null, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+    public static PackEntry ofBytes(String name, byte[] content) {
+        return new PackEntry(name, null, content, content.length, System.currentTimeMillis());
+    }
+
+    PackEntry(String name, Path source, byte[] content, long size, long lastModified) {
+        this.name = name;
+        this.source = source;
+        this.content = content;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+
+// Writes pack entries into a folder. Given the manifest of the previous build, only entries whose source changed are
+// written and only files that are no longer part of the pack are deleted. The manifest of this build is only saved in
+// the folder for incremental builds, so that it does not ship with the pack otherwise.
+public class PackFolderWriter {
+    Path folder;
+    String settings;
+    boolean hardLinks;
+    boolean saveManifest;
+    BuildMetrics metrics;
+    int written;
+    int unchanged;
+    int removed;
+    long writtenBytes;
+
+    public int getWritten() {
+        return written;
+    }
+    public int getUnchanged() {
+        return unchanged;
+    }
+    public int getRemoved() {
+        return removed;
+    }
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public void write(List<PackEntry> entries, BuildManifest previous) throws IOException {
+        BuildManifest manifest = new BuildManifest(settings);
+        HashSet<String> names = new HashSet<>();
+        for (PackEntry entry : entries) {
+            names.add(entry.getName());
+            Path outPath = folder.resolve(entry.getName());
+
+            BuildMetrics.Span filter = metrics.begin(BuildMetrics.Phase.FILTER);
+            if (previous != null && previous.isUnchanged(entry) && isIntact(outPath, entry.getSize())) {
+                manifest.put(entry.getName(), previous.get(entry.getName()));
+                unchanged++;
+                filter.end(entry.getName(), 0, 0);
+                continue;
+            }
+
+            // Files without a matching record are written without being hashed, so a fresh build reads every file only
+            // once, or not at all with hard links.
+            BuildManifest.Record record = previous != null ? previous.get(entry.getName()) : null;
+            boolean sameSize = record != null && record.size == entry.getSize();
+            long hash = BuildManifest.UNKNOWN_HASH;
+            if (entry.isInMemory() || (sameSize && record.hash != BuildManifest.UNKNOWN_HASH)) {
+                hash = BuildManifest.hash(entry);
+            }
+            boolean same = sameSize && hash != BuildManifest.UNKNOWN_HASH && record.hash == hash && isIntact(outPath, entry.getSize());
+            filter.end(entry.getName(), hash != BuildManifest.UNKNOWN_HASH ? entry.getSize() : 0, 0);
+            if (same) {
+                unchanged++;
+            }
+            else {
+                BuildMetrics.Span write = metrics.begin(BuildMetrics.Phase.WRITE);
+                if (Files.notExists(outPath.getParent())) {
+                    Files.createDirectories(outPath.getParent().toAbsolutePath());
+                }
+                if (entry.isInMemory()) {
+                    // Never write into an existing file, which may be a hard link to a source file.
+                    Files.deleteIfExists(outPath);
+                    Files.write(outPath, entry.getContent());
+                }
+                else {
+                    copy(entry.getSource(), outPath);
+                }
+                write.end(entry.getName(), entry.getSize(), entry.getSize());
+                written++;
+                writtenBytes += entry.getSize();
+            }
+            manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), hash));
+        }
+
+        BuildMetrics.Span finalize = metrics.begin(BuildMetrics.Phase.FINALIZE);
+        if (previous != null) {
+            for (String name : previous.getNames()) {
+                if (names.contains(name)) continue;
+
+                Path outPath = folder.resolve(name);
+                if (Files.deleteIfExists(outPath)) removed++;
+                deleteEmptyParents(outPath);
+            }
+        }
+
+        if (saveManifest) manifest.save(folder.resolve(BuildManifest.FILE_NAME));
+        finalize.end(removed, 0, 0);
+    }
+
+    // Copies the file without loading it onto the heap, or hard links it when enabled. Hard links only work within one
+    // file system, so the first failure switches the rest of the build to copying.
+    void copy(Path source, Path target) throws IOException {
+        if (hardLinks) {
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, source);
+                return;
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                System.out.printf("Could not hard link %1$s (%2$s). Copying files instead.\n", source, e);
+                hardLinks = false;
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+    // Output files that were deleted or cut short since the previous build are written again.
+    static boolean isIntact(Path file, long size) throws IOException {
+        return Files.isRegularFile(file) && Files.size(file) == size;
+    }
+    void deleteEmptyParents(Path file) throws IOException {
+        for (Path parent = file.getParent(); parent != null && !parent.equals(folder) && parent.startsWith(folder); parent = parent.getParent()) {
+            try {
+                if (!Files.deleteIfExists(parent)) return;
+            }
+            catch (DirectoryNotEmptyException e) {
+                return;
+            }
+        }
+    }
+
+    public PackFolderWriter(Path folder, String settings, boolean hardLinks, boolean saveManifest, BuildMetrics metrics) {
+        this.folder = folder.toAbsolutePath().normalize();
+        this.settings = settings;
+        this.hardLinks = hardLinks;
+        this.saveManifest = saveManifest;
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+// The pack_format of a pack and the range of formats it declares support for with supported_formats, which Minecraft
+// reads since 1.20.2. Packs made for a single format leave supported_formats out.
+public class PackFormat {
+    int format;
+    int minFormat;
+    int maxFormat;
+
+    public int getFormat() {
+        return format;
+    }
+    public int getMinFormat() {
+        return minFormat;
+    }
+    public int getMaxFormat() {
+        return maxFormat;
+    }
+    public boolean isRange() {
+        return minFormat != maxFormat;
+    }
+    public String describe() {
+        return isRange() ? format + ";" + minFormat + "-" + maxFormat : Integer.toString(format);
+    }
+
+    public static PackFormat of(int format) {
+        return new PackFormat(format, format, format);
+    }
+
+    PackFormat(int format, int minFormat, int maxFormat) {
+        this.format = format;
+        this.minFormat = minFormat;
+        this.maxFormat = maxFormat;
+    }
+}
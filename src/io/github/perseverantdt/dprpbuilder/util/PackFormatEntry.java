@@ -2,22 +2,34 @@ package io.github.perseverantdt.dprpbuilder.util;
 
 import com.github.zafarkhaja.semver.Version;
 
+// A pack format and the Minecraft versions that use it, written as "1.13 - 1.14.4" or as a single version. The range
+// is parsed once into two comparable keys, so checking a version is two comparisons.
 public class PackFormatEntry {
     int format;
-    String versionPattern;
+    String versions;
+    long from;
+    long to;
 
     public int getFormat() {
         return format;
     }
+    public String getVersions() {
+        return versions;
+    }
     public boolean includes(Version version) {
-        return version.satisfies(versionPattern);
+        long key = PackFormatIndex.getKey(version);
+        return from <= key && key <= to;
     }
     public boolean includes(String version) {
-        return Version.valueOf(version).satisfies(versionPattern);
+        return includes(PackFormatIndex.parseVersion(version));
     }
 
-    public PackFormatEntry(int format, String versionPattern) {
+    public PackFormatEntry(int format, String versions) {
+        int separator = versions.indexOf(" - ");
         this.format = format;
-        this.versionPattern = versionPattern;
+        this.versions = versions;
+        this.from = PackFormatIndex.getKey(PackFormatIndex.parseVersion(separator < 0 ? versions : versions.substring(0, separator)));
+        this.to = PackFormatIndex.getKey(PackFormatIndex.parseVersion(separator < 0 ? versions : versions.substring(separator + 3)));
+        if (from > to) throw new IllegalArgumentException("The versions of pack format " + format + " are in the wrong order: " + versions);
     }
 }
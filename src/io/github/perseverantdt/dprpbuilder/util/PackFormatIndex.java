@@ -0,0 +1,135 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.github.zafarkhaja.semver.Version;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The pack formats of one kind of pack, sorted by the first Minecraft version that uses them, so that the format of a
+// version is found with a binary search. The tables are read from pack_formats.json, which is bundled with the program
+// and can be replaced with a newer file through the packFormats setting when new versions come out.
+public class PackFormatIndex {
+    public static final String DATAPACK = "datapack";
+    public static final String RESOURCE_PACK = "resourcepack";
+    static final String BUNDLED_PATH = "/pack_formats.json";
+    static Map<String, PackFormatIndex> bundled;
+
+    String packType;
+    PackFormatEntry[] entries;
+    long[] starts;
+
+    public String getPackType() {
+        return packType;
+    }
+    public PackFormatEntry getNewest() {
+        return entries[entries.length - 1];
+    }
+    // Returns the entry whose versions include the version, or null if there is none.
+    public PackFormatEntry find(Version version) {
+        int i = Arrays.binarySearch(starts, getKey(version));
+        if (i < 0) i = -i - 2;
+        return i >= 0 && entries[i].includes(version) ? entries[i] : null;
+    }
+    public boolean isNewerThanTable(Version version) {
+        return getKey(version) > getNewest().to;
+    }
+    // Versions newer than the table get its newest format, since a new version usually keeps the format of the one
+    // before it for a while. Older versions, and versions between two ranges, have no format.
+    public int getFormat(Version version) {
+        PackFormatEntry entry = find(version);
+        if (entry != null) return entry.format;
+        if (isNewerThanTable(version)) return getNewest().format;
+        throw new IllegalArgumentException(String.format("Minecraft %1$s has no %2$s format.", version, packType));
+    }
+    // The format of the target version is the pack_format, and the other supported versions widen supported_formats.
+    public PackFormat getFormat(Version targetVersion, List<Version> supportedVersions) {
+        int format = getFormat(targetVersion);
+        int minFormat = format;
+        int maxFormat = format;
+        for (Version version : supportedVersions) {
+            int supportedFormat = getFormat(version);
+            minFormat = Math.min(minFormat, supportedFormat);
+            maxFormat = Math.max(maxFormat, supportedFormat);
+        }
+        return new PackFormat(format, minFormat, maxFormat);
+    }
+
+    // Returns the tables in the file by pack type. Kinds of packs missing from the file keep the bundled table.
+    public static Map<String, PackFormatIndex> load(Path path) throws IOException {
+        HashMap<String, PackFormatIndex> indexes = new HashMap<>(getBundled());
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            indexes.putAll(read(reader, path.toString()));
+        }
+        return indexes;
+    }
+    public static synchronized Map<String, PackFormatIndex> getBundled() {
+        if (bundled != null) return bundled;
+        try (InputStream input = PackFormatIndex.class.getResourceAsStream(BUNDLED_PATH)) {
+            if (input == null) throw new IOException("Could not find the bundled pack format tables.");
+            bundled = read(new InputStreamReader(input, StandardCharsets.UTF_8), BUNDLED_PATH);
+            return bundled;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // Reads a file like {"datapack": [{"format": 10, "versions": "1.19 - 1.19.3"}, ...], "resourcepack": [...]}.
+    static Map<String, PackFormatIndex> read(Reader reader, String name) throws IOException {
+        HashMap<String, PackFormatIndex> indexes = new HashMap<>();
+        try {
+            JsonObject tables = JsonParser.parseReader(reader).getAsJsonObject();
+            for (Map.Entry<String, JsonElement> table : tables.entrySet()) {
+                ArrayList<PackFormatEntry> entries = new ArrayList<>();
+                for (JsonElement element : table.getValue().getAsJsonArray()) {
+                    JsonObject entry = element.getAsJsonObject();
+                    entries.add(new PackFormatEntry(entry.get("format").getAsInt(), entry.get("versions").getAsString()));
+                }
+                indexes.put(table.getKey(), new PackFormatIndex(table.getKey(), entries));
+            }
+        }
+        catch (JsonParseException | IllegalStateException | NullPointerException | UnsupportedOperationException | IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid pack format table in %1$s: %2$s", name, e.getMessage()), e);
+        }
+        return indexes;
+    }
+    // Minecraft leaves out the patch number of the first release of a minor version, like 1.20, which semantic
+    // versioning does not allow.
+    public static Version parseVersion(String version) {
+        String trimmed = version.trim();
+        if (trimmed.chars().filter(c -> c == '.').count() == 1) trimmed += ".0";
+        return Version.valueOf(trimmed);
+    }
+    static long getKey(Version version) {
+        return ((long) version.getMajorVersion() << 42) | ((long) Math.min(version.getMinorVersion(), (1 << 21) - 1) << 21) | Math.min(version.getPatchVersion(), (1 << 21) - 1);
+    }
+
+    PackFormatIndex(String packType, List<PackFormatEntry> entries) {
+        if (entries.isEmpty()) throw new IllegalArgumentException("The " + packType + " table has no formats.");
+        this.packType = packType;
+        this.entries = entries.toArray(new PackFormatEntry[0]);
+        Arrays.sort(this.entries, Comparator.comparingLong(entry -> entry.from));
+        this.starts = new long[this.entries.length];
+        for (int i = 0; i < this.entries.length; i++) {
+            if (i > 0 && this.entries[i].from <= this.entries[i - 1].to) {
+                throw new IllegalArgumentException(String.format("The versions of %1$s formats %2$d and %3$d overlap.", packType, this.entries[i - 1].format, this.entries[i].format));
+            }
+            starts[i] = this.entries[i].from;
+        }
+    }
+}
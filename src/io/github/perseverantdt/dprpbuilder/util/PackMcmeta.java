@@ -0,0 +1,34 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Writes the pack.mcmeta of a pack. A JsonWriter is used directly, since setting up Gson takes longer than the rest of a
+// small build. supported_formats is only written for packs that support more than one format, since Minecraft versions
+// before 1.20.2 do not know it.
+public class PackMcmeta {
+    public static byte[] write(PackFormat format, String description, boolean minify) {
+        StringWriter output = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(output)) {
+            if (!minify) writer.setIndent("  ");
+            writer.setHtmlSafe(true);
+            writer.beginObject();
+            writer.name("pack").beginObject();
+            writer.name("pack_format").value(format.getFormat());
+            if (format.isRange()) {
+                writer.name("supported_formats").beginArray().value(format.getMinFormat()).value(format.getMaxFormat()).endArray();
+            }
+            writer.name("description").value(description);
+            writer.endObject();
+            writer.endObject();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Splits a finished zip into parts of at most maxSize bytes, going by the compressed size of its entries. Every part
+// gets the files outside of assets/, like pack.mcmeta, so that it is a pack of its own. The assets are grouped by
+// namespace, and a group that does not fit in a part is split into its folders, and those into theirs, until every
+// group fits. The groups are then put in parts largest first, each in the first part with room for it.
+public class PackSplitter {
+    // The local and central headers of an entry copied without a data descriptor, apart from its name.
+    static final int ENTRY_OVERHEAD = 30 + 46;
+    // The end of central directory record, and room for the ZIP64 one in case there are too many entries.
+    static final int END_OVERHEAD = 22 + 56 + 20;
+
+    long maxSize;
+
+    public List<List<ZipArchiveReader.Entry>> split(List<ZipArchiveReader.Entry> entries) throws IOException {
+        ArrayList<ZipArchiveReader.Entry> common = new ArrayList<>();
+        ArrayList<ZipArchiveReader.Entry> assets = new ArrayList<>();
+        for (ZipArchiveReader.Entry entry : entries) {
+            if (entry.getName().startsWith("assets/")) assets.add(entry);
+            else common.add(entry);
+        }
+        long capacity = maxSize - END_OVERHEAD - getSize(common);
+        if (capacity <= 0) throw new IOException("The files every part of the pack needs, like pack.mcmeta and pack.png, do not fit in maxPackSize.");
+
+        ArrayList<Group> groups = new ArrayList<>();
+        addGroups("assets/", assets, capacity, groups);
+        groups.sort(Comparator.comparingLong((Group group) -> group.size).reversed());
+
+        ArrayList<Group> parts = new ArrayList<>();
+        for (Group group : groups) {
+            Group part = null;
+            for (Group candidate : parts) {
+                if (candidate.size + group.size <= capacity) {
+                    part = candidate;
+                    break;
+                }
+            }
+            if (part == null) {
+                part = new Group(new ArrayList<>(), 0);
+                parts.add(part);
+            }
+            part.entries.addAll(group.entries);
+            part.size += group.size;
+        }
+
+        ArrayList<List<ZipArchiveReader.Entry>> split = new ArrayList<>();
+        for (Group part : parts) {
+            // The entries of each part keep the order they had in the pack.
+            part.entries.sort(Comparator.comparingLong(entry -> entry.localHeaderOffset));
+            ArrayList<ZipArchiveReader.Entry> partEntries = new ArrayList<>(common);
+            partEntries.addAll(part.entries);
+            split.add(partEntries);
+        }
+        if (split.isEmpty()) split.add(common);
+        return split;
+    }
+    // Writes the parts with their size, SHA-1 and namespaces as JSON, replacing the previous list. Reproducible builds
+    // pass their fixed time as the timestamp.
+    public static void writeManifest(Path manifestPath, String packName, long timestamp, List<List<ZipArchiveReader.Entry>> parts, List<Path> zipPaths, List<ZipArchiveWriter> zips) throws IOException {
+        Path tempPath = InputOutput.getTempSibling(manifestPath);
+        try {
+            try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8))) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name("pack").value(packName);
+                writer.name("timestamp").value(timestamp);
+                writer.name("parts").beginArray();
+                for (int i = 0; i < parts.size(); i++) {
+                    TreeSet<String> namespaces = new TreeSet<>();
+                    for (ZipArchiveReader.Entry entry : parts.get(i)) {
+                        // Files directly in assets/ are in no namespace.
+                        int namespaceEnd = entry.getName().startsWith("assets/") ? entry.getName().indexOf('/', "assets/".length()) : -1;
+                        if (namespaceEnd >= 0) namespaces.add(entry.getName().substring("assets/".length(), namespaceEnd));
+                    }
+
+                    writer.beginObject();
+                    writer.name("file").value(zipPaths.get(i).getFileName().toString());
+                    writer.name("size").value(zips.get(i).getOffset());
+                    writer.name("sha1").value(InputOutput.toHex(zips.get(i).getSha1()));
+                    writer.name("files").value(parts.get(i).size());
+                    writer.name("namespaces").beginArray();
+                    for (String namespace : namespaces) {
+                        writer.value(namespace);
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            InputOutput.moveAtomically(tempPath, manifestPath);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    static void addGroups(String prefix, List<ZipArchiveReader.Entry> entries, long capacity, List<Group> groups) throws IOException {
+        long size = getSize(entries);
+        if (size <= capacity) {
+            if (!entries.isEmpty()) groups.add(new Group(new ArrayList<>(entries), size));
+            return;
+        }
+        if (entries.size() == 1) throw new IOException(String.format("%1$s is %2$d KB compressed, which is too large for any part of the pack.", entries.get(0).getName(), size / 1024));
+
+        // Files directly in the folder are groups of their own.
+        LinkedHashMap<String, List<ZipArchiveReader.Entry>> folders = new LinkedHashMap<>();
+        for (ZipArchiveReader.Entry entry : entries) {
+            int folderEnd = entry.getName().indexOf('/', prefix.length());
+            String folder = folderEnd >= 0 ? entry.getName().substring(0, folderEnd + 1) : entry.getName();
+            folders.computeIfAbsent(folder, key -> new ArrayList<>()).add(entry);
+        }
+        for (Map.Entry<String, List<ZipArchiveReader.Entry>> folder : folders.entrySet()) {
+            addGroups(folder.getKey(), folder.getValue(), capacity, groups);
+        }
+    }
+    static long getSize(List<ZipArchiveReader.Entry> entries) {
+        long size = 0;
+        for (ZipArchiveReader.Entry entry : entries) {
+            size += getSize(entry);
+        }
+        return size;
+    }
+    // The name is in both headers.
+    static long getSize(ZipArchiveReader.Entry entry) {
+        return ENTRY_OVERHEAD + 2L * entry.getName().getBytes(StandardCharsets.UTF_8).length + entry.getCompressedSize();
+    }
+
+    static class Group {
+        ArrayList<ZipArchiveReader.Entry> entries;
+        long size;
+
+        Group(ArrayList<ZipArchiveReader.Entry> entries, long size) {
+            this.entries = entries;
+            this.size = size;
+        }
+    }
+
+    public PackSplitter(long maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Watches folders and everything inside them so that packs can be rebuilt as soon as their files change. WatchService
+// only watches single folders, so every subfolder is registered on its own and new subfolders are registered as they
+// appear.
+public class PackWatcher implements Closeable {
+    public static final long DEBOUNCE_MILLIS = 300;
+
+    WatchService watchService;
+    HashMap<WatchKey, Path> folders = new HashMap<>();
+    HashMap<WatchKey, Path> roots = new HashMap<>();
+    ArrayList<Path> ignoredPaths = new ArrayList<>();
+
+    public void register(Path root) throws IOException {
+        Path normalizedRoot = root.toAbsolutePath().normalize();
+        registerRecursively(normalizedRoot, normalizedRoot);
+    }
+    // Changes inside an ignored path never trigger a rebuild, which keeps an output folder that sits inside a watched
+    // folder from rebuilding itself forever.
+    public void ignore(Path path) {
+        ignoredPaths.add(path.toAbsolutePath().normalize());
+    }
+    // Blocks until something changes, then keeps collecting events until none arrive for DEBOUNCE_MILLIS, so that a
+    // burst of saves results in a single rebuild. Returns the registered roots that changed.
+    public Set<Path> awaitChanges() throws InterruptedException {
+        HashSet<Path> changed = new HashSet<>();
+        while (changed.isEmpty()) {
+            WatchKey key = watchService.take();
+            while (key != null) {
+                handle(key, changed);
+                key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return changed;
+    }
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    void handle(WatchKey key, Set<Path> changed) {
+        Path folder = folders.get(key);
+        Path root = roots.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so there is no telling what changed.
+                changed.addAll(roots.values());
+                continue;
+            }
+            if (folder == null) continue;
+
+            Path child = folder.resolve((Path) event.context());
+            if (isIgnored(child)) continue;
+            changed.add(root);
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    registerRecursively(child, root);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            folders.remove(key);
+            roots.remove(key);
+        }
+    }
+    void registerRecursively(Path folder, Path root) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (isIgnored(dir)) return FileVisitResult.SKIP_SUBTREE;
+
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                folders.put(key, dir);
+                roots.put(key, root);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    boolean isIgnored(Path path) {
+        for (Path ignoredPath : ignoredPaths) {
+            if (path.startsWith(ignoredPath)) return true;
+        }
+        return false;
+    }
+
+    public PackWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+}
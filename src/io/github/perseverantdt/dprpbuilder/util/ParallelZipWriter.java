@@ -0,0 +1,430 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+// Deflates entries on a fork-join pool and writes them to the archive in their original order. Entries larger than
+// CHUNK_SIZE are split into chunks that are compressed separately, each primed with the 32 KB before it, the same way
+// pigz does it. How each entry is compressed is decided by the CompressionPolicy.
+public class ParallelZipWriter {
+    static final int CHUNK_SIZE = 1 << 20;
+    static final int DICTIONARY_SIZE = 1 << 15;
+    // Part of the cache namespace. Raise it whenever the way cached entries are compressed or stored changes.
+    static final int CACHE_VERSION = 1;
+    // Smaller entries are deflated faster than their cached result is read.
+    static final int MIN_CACHED_SIZE = 1 << 12;
+    static final int CACHE_TRAILER_SIZE = 8;
+    static final int ALL_VARIANTS = -1;
+
+    ForkJoinPool pool;
+    CompressionPolicy policy;
+    ContentCache cache;
+    SourceReader reader;
+    BuildMetrics metrics;
+
+    // Entries whose source did not change since the previous build are copied from the previous archive as they are.
+    public BuildManifest write(ZipArchiveWriter zip, List<PackEntry> entries, String settings, BuildManifest previous, ZipArchiveReader previousZip) throws IOException {
+        return write(List.of(zip), List.of(entries), settings, previous, previousZip).get(0);
+    }
+    // Writes each list of entries to its own archive at the same time. Every list has the same entries in the same
+    // order, and entries that are the same in every list are read and compressed once for all the archives.
+    public List<BuildManifest> write(List<ZipArchiveWriter> zips, List<List<PackEntry>> variants, String settings, BuildManifest previous, ZipArchiveReader previousZip) throws IOException {
+        List<PackEntry> entries = variants.get(0);
+        for (List<PackEntry> variant : variants) {
+            if (variant.size() != entries.size()) throw new IllegalArgumentException("Every variant of an archive needs the same entries.");
+        }
+        ArrayList<BuildManifest> manifests = new ArrayList<>();
+        for (int i = 0; i < zips.size(); i++) {
+            manifests.add(new BuildManifest(settings));
+        }
+
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        ArrayList<ForkJoinTask<Integer>> samples = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            PackEntry entry = entries.get(i);
+            boolean shared = true;
+            for (List<PackEntry> variant : variants) {
+                shared &= isSame(entry, variant.get(i));
+            }
+            if (shared) {
+                addChunks(chunks, samples, entry, ALL_VARIANTS, previous, previousZip);
+                continue;
+            }
+            for (int j = 0; j < variants.size(); j++) {
+                addChunks(chunks, samples, variants.get(j).get(i), j, previous, previousZip);
+            }
+        }
+        for (ForkJoinTask<Integer> sample : samples) {
+            join(sample);
+        }
+        for (Chunk chunk : chunks) {
+            if (chunk.sample != null) {
+                chunk.level = chunk.sample.join();
+                chunk.sample = null;
+            }
+        }
+
+        int window = pool.getParallelism() * 4;
+        ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+        int next = 0;
+        long crc = 0;
+        long compressedSize = 0;
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                while (next < chunks.size() && next - i < window) {
+                    Chunk chunk = chunks.get(next++);
+                    pending.add(chunk.reused != null ? pool.submit(() -> chunk) : pool.submit(() -> compress(chunk)));
+                }
+
+                Chunk chunk = join(pending.poll());
+                if (chunk.reused == null && chunk.count > 1) {
+                    crc = chunk.index == 0 ? chunk.crc : combineCrc(crc, chunk.crc, chunk.length);
+                    compressedSize = (chunk.index == 0 ? 0 : compressedSize) + chunk.dataLength;
+                }
+                for (int j = 0; j < zips.size(); j++) {
+                    if (chunk.variant != ALL_VARIANTS && chunk.variant != j) continue;
+
+                    ZipArchiveWriter zip = zips.get(j);
+                    BuildMetrics.Span write = metrics.begin(BuildMetrics.Phase.WRITE);
+                    long offset = zip.getOffset();
+                    writeChunk(zip, manifests.get(j), previousZip, chunk, crc, compressedSize);
+                    write.end(chunk.entry.getName(), chunk.reused != null ? chunk.entry.getSize() : chunk.length, zip.getOffset() - offset);
+                }
+                chunk.data = null;
+            }
+        }
+        finally {
+            for (ForkJoinTask<Chunk> task : pending) {
+                task.cancel(true);
+            }
+        }
+        return manifests;
+    }
+
+    void addChunks(List<Chunk> chunks, List<ForkJoinTask<Integer>> samples, PackEntry entry, int variant, BuildManifest previous, ZipArchiveReader previousZip) throws IOException {
+        BuildMetrics.Span filter = metrics.begin(BuildMetrics.Phase.FILTER);
+        ZipArchiveReader.Entry reusable = findReusable(entry, previous, previousZip);
+        filter.end(entry.getName(), 0, 0);
+        if (reusable != null) {
+            Chunk chunk = new Chunk(entry, variant, 0, 1, 0, 0, CompressionPolicy.STORED, null);
+            chunk.reused = reusable;
+            chunks.add(chunk);
+            return;
+        }
+
+        int count = (int) Math.max(1, (entry.getSize() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        int level = policy.getLevel(entry.getName());
+        ForkJoinTask<Integer> sample = null;
+        if (level == CompressionPolicy.AUTO && count > 1) {
+            sample = pool.submit(() -> sample(entry));
+            samples.add(sample);
+        }
+
+        for (int i = 0; i < count; i++) {
+            long position = (long) i * CHUNK_SIZE;
+            chunks.add(new Chunk(entry, variant, i, count, position, (int) Math.min(CHUNK_SIZE, entry.getSize() - position), level, sample));
+        }
+    }
+    // The CRC and compressed size of entries split into chunks are those of every chunk up to this one.
+    void writeChunk(ZipArchiveWriter zip, BuildManifest manifest, ZipArchiveReader previousZip, Chunk chunk, long crc, long compressedSize) throws IOException {
+        PackEntry entry = chunk.entry;
+        if (chunk.reused != null) {
+            previousZip.copyEntry(chunk.reused, zip, entry.getLastModified());
+            manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), chunk.reused.getCrc()));
+        }
+        else if (chunk.count == 1) {
+            int method = chunk.level == CompressionPolicy.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+            zip.beginEntry(entry.getName(), method, entry.getLastModified(), chunk.crc, chunk.dataLength, chunk.length);
+            zip.write(chunk.data.duplicate());
+            zip.endEntry(chunk.crc, chunk.dataLength, chunk.length);
+            manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), chunk.crc));
+        }
+        else if (chunk.level == CompressionPolicy.STORED) {
+            // Stored entries need their CRC in the local header, so the chunks only checksum the data and the file is
+            // copied into the archive once every chunk is done.
+            if (chunk.index == chunk.count - 1) {
+                zip.beginEntry(entry.getName(), ZipEntry.STORED, entry.getLastModified(), crc, entry.getSize(), entry.getSize());
+                reader.transferTo(entry, zip);
+                zip.endEntry(crc, entry.getSize(), entry.getSize());
+                manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), crc));
+            }
+        }
+        else {
+            if (chunk.index == 0) zip.beginEntry(entry.getName(), ZipEntry.DEFLATED, entry.getLastModified());
+            zip.write(chunk.data.duplicate());
+            if (chunk.index == chunk.count - 1) {
+                zip.endEntry(crc, compressedSize, entry.getSize());
+                manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), crc));
+            }
+        }
+    }
+    // Entries made for each variant, like pack.mcmeta, are the same if their content is.
+    static boolean isSame(PackEntry entry, PackEntry other) {
+        if (entry == other) return true;
+        if (!entry.getName().equals(other.getName())) throw new IllegalArgumentException("Every variant of an archive needs the same entries in the same order.");
+        return entry.isInMemory() && other.isInMemory() && Arrays.equals(entry.getContent(), other.getContent());
+    }
+
+    Chunk compress(Chunk chunk) throws IOException {
+        boolean stored = chunk.level == CompressionPolicy.STORED;
+        int dictionaryLength = stored ? 0 : (int) Math.min(DICTIONARY_SIZE, chunk.position);
+        BuildMetrics.Span read = metrics.begin(BuildMetrics.Phase.READ);
+        ByteBuffer input = reader.read(chunk.entry, chunk.position - dictionaryLength, dictionaryLength + chunk.length);
+        read.end(chunk.entry.getName(), input.remaining(), 0);
+
+        BuildMetrics.Span compress = metrics.begin(BuildMetrics.Phase.COMPRESS);
+        if (cache != null && chunk.count == 1 && !stored && chunk.length >= MIN_CACHED_SIZE) compressCached(chunk, input);
+        else compress(chunk, input, dictionaryLength, stored);
+        // Stored chunks are written straight from their input, which has to outlive the next read of this thread.
+        if (chunk.data == input) chunk.data = reader.retain(input);
+        compress.end(chunk.entry.getName(), chunk.length, chunk.dataLength);
+        return chunk;
+    }
+    void compress(Chunk chunk, ByteBuffer input, int dictionaryLength, boolean stored) {
+        CRC32 crc = new CRC32();
+        crc.update(input.slice(dictionaryLength, chunk.length));
+        chunk.crc = crc.getValue();
+
+        if (stored) {
+            if (chunk.count == 1) {
+                chunk.data = input;
+                chunk.dataLength = input.remaining();
+            }
+            return;
+        }
+
+        if (chunk.level == CompressionPolicy.AUTO) {
+            // Only single-chunk entries get here. Small entries are compressed whole and judged on the result, larger
+            // ones on a sample first so that incompressible data does not go through DEFLATE twice.
+            if (chunk.length > CompressionPolicy.SAMPLE_SIZE && !policy.isWorthDeflating(CompressionPolicy.SAMPLE_SIZE, deflatedSize(input.slice(0, CompressionPolicy.SAMPLE_SIZE)))) {
+                chunk.level = CompressionPolicy.STORED;
+                chunk.data = input;
+                chunk.dataLength = input.remaining();
+                return;
+            }
+            deflate(chunk, input, 0, Deflater.DEFAULT_COMPRESSION);
+            if (!policy.isWorthDeflating(chunk.length, chunk.dataLength)) {
+                chunk.level = CompressionPolicy.STORED;
+                chunk.data = input;
+                chunk.dataLength = input.remaining();
+            }
+            else {
+                chunk.level = Deflater.DEFAULT_COMPRESSION;
+            }
+            return;
+        }
+
+        if (chunk.level == CompressionPolicy.MAX) deflateExhaustively(chunk, input, dictionaryLength);
+        else deflate(chunk, input, dictionaryLength, chunk.level);
+    }
+    // Level 9 is tried first and kept if the ExhaustiveDeflater runs out of time or does no better, so "max" is never
+    // worse than it.
+    void deflateExhaustively(Chunk chunk, ByteBuffer input, int dictionaryLength) {
+        deflate(chunk, input, dictionaryLength, Deflater.BEST_COMPRESSION);
+        long deadline = policy.getMaxMillis() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getMaxMillis()) : Long.MAX_VALUE;
+        byte[] output = ExhaustiveDeflater.deflate(input, dictionaryLength, chunk.index == chunk.count - 1, policy.getMaxIterations(), deadline);
+        if (output != null && output.length < chunk.dataLength) {
+            chunk.data = ByteBuffer.wrap(output);
+            chunk.dataLength = output.length;
+        }
+    }
+    // Single-chunk entries are cached by the hash of their content and their compression setting, so that a file is only
+    // compressed once, whichever project or branch it is built from. A cached entry is its compressed data followed by
+    // the level it ended up with and its CRC, or only those two for entries that ended up stored.
+    void compressCached(Chunk chunk, ByteBuffer input) throws IOException {
+        String namespace = "zip" + CACHE_VERSION;
+        String hash = ContentCache.hash(input) + "-" + CompressionPolicy.describeLevel(chunk.level) + (chunk.level == CompressionPolicy.AUTO ? "-" + policy.getAutoMinRatio() : "") + (chunk.level == CompressionPolicy.MAX ? "-" + policy.getMaxIterations() + "-" + policy.getMaxMillis() : "");
+        byte[] cached = cache.get(namespace, hash);
+        if (cached != null && cached.length >= CACHE_TRAILER_SIZE) {
+            ByteBuffer trailer = ByteBuffer.wrap(cached, cached.length - CACHE_TRAILER_SIZE, CACHE_TRAILER_SIZE);
+            int level = trailer.getInt();
+            long crc = trailer.getInt() & 0xFFFFFFFFL;
+            boolean stored = level == CompressionPolicy.STORED;
+            // Anything else is a cached entry of an unknown format, which is compressed and cached again.
+            if (stored ? cached.length == CACHE_TRAILER_SIZE : cached.length > CACHE_TRAILER_SIZE && level != CompressionPolicy.AUTO) {
+                chunk.level = level;
+                chunk.crc = crc;
+                chunk.data = stored ? input : ByteBuffer.wrap(cached, 0, cached.length - CACHE_TRAILER_SIZE);
+                chunk.dataLength = chunk.data.remaining();
+                return;
+            }
+        }
+
+        compress(chunk, input, 0, false);
+        boolean stored = chunk.level == CompressionPolicy.STORED;
+        byte[] entry = new byte[(stored ? 0 : chunk.dataLength) + CACHE_TRAILER_SIZE];
+        if (!stored) chunk.data.duplicate().get(entry, 0, chunk.dataLength);
+        ByteBuffer.wrap(entry, entry.length - CACHE_TRAILER_SIZE, CACHE_TRAILER_SIZE).putInt(chunk.level).putInt((int) chunk.crc);
+        cache.put(namespace, hash, entry);
+    }
+    int sample(PackEntry entry) throws IOException {
+        BuildMetrics.Span read = metrics.begin(BuildMetrics.Phase.READ);
+        ByteBuffer sample = reader.read(entry, 0, (int) Math.min(CompressionPolicy.SAMPLE_SIZE, entry.getSize()));
+        int sampleLength = sample.remaining();
+        read.end(entry.getName(), sampleLength, 0);
+
+        BuildMetrics.Span compress = metrics.begin(BuildMetrics.Phase.COMPRESS);
+        long deflatedSize = deflatedSize(sample);
+        compress.end(entry.getName(), sampleLength, 0);
+        return policy.isWorthDeflating(sampleLength, deflatedSize) ? Deflater.DEFAULT_COMPRESSION : CompressionPolicy.STORED;
+    }
+
+    // The Deflater reads the input where it is, so mapped files are compressed without being copied onto the heap.
+    static void deflate(Chunk chunk, ByteBuffer input, int dictionaryLength, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) deflater.setDictionary(input.slice(0, dictionaryLength));
+            deflater.setInput(input.slice(dictionaryLength, chunk.length));
+
+            byte[] output = new byte[Math.max(64, chunk.length / 2 + 64)];
+            int outputLength = 0;
+            boolean last = chunk.index == chunk.count - 1;
+            if (last) deflater.finish();
+            while (true) {
+                if (outputLength == output.length) {
+                    byte[] grown = new byte[output.length * 2];
+                    System.arraycopy(output, 0, grown, 0, outputLength);
+                    output = grown;
+                }
+
+                int available = output.length - outputLength;
+                int written = last ? deflater.deflate(output, outputLength, available) : deflater.deflate(output, outputLength, available, Deflater.SYNC_FLUSH);
+                outputLength += written;
+                if (last ? deflater.finished() : written < available) break;
+            }
+
+            chunk.data = ByteBuffer.wrap(output, 0, outputLength);
+            chunk.dataLength = outputLength;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    static long deflatedSize(ByteBuffer input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(input.duplicate());
+            deflater.finish();
+            byte[] output = new byte[1 << 14];
+            while (!deflater.finished()) {
+                deflater.deflate(output);
+            }
+            return deflater.getBytesWritten();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    static ZipArchiveReader.Entry findReusable(PackEntry entry, BuildManifest previous, ZipArchiveReader previousZip) throws IOException {
+        if (previous == null || previousZip == null) return null;
+
+        BuildManifest.Record record = previous.get(entry.getName());
+        ZipArchiveReader.Entry previousEntry = previousZip.getEntry(entry.getName());
+        if (record == null || previousEntry == null || previousEntry.getCrc() != record.getHash() || previousEntry.getSize() != entry.getSize()) return null;
+        if (previous.isUnchanged(entry) || BuildManifest.hash(entry) == record.getHash()) return previousEntry;
+        return null;
+    }
+    static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        }
+        catch (CancellationException e) {
+            throw new IOException("Compression was cancelled.", e);
+        }
+        catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            }
+            throw e;
+        }
+    }
+    // Port of zlib's crc32_combine().
+    static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) return crc1;
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        squareMatrix(even, odd);
+        squareMatrix(odd, even);
+
+        do {
+            squareMatrix(even, odd);
+            if ((length2 & 1) != 0) crc1 = multiplyMatrix(even, crc1);
+            length2 >>= 1;
+            if (length2 == 0) break;
+
+            squareMatrix(odd, even);
+            if ((length2 & 1) != 0) crc1 = multiplyMatrix(odd, crc1);
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+    static long multiplyMatrix(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) sum ^= matrix[i];
+        }
+        return sum;
+    }
+    static void squareMatrix(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = multiplyMatrix(matrix, matrix[n]);
+        }
+    }
+
+    static class Chunk {
+        PackEntry entry;
+        // The index of the only archive the chunk is written to, or ALL_VARIANTS.
+        int variant;
+        int index;
+        int count;
+        long position;
+        int length;
+        int level;
+        ForkJoinTask<Integer> sample;
+        ZipArchiveReader.Entry reused;
+        long crc;
+        ByteBuffer data;
+        int dataLength;
+
+        Chunk(PackEntry entry, int variant, int index, int count, long position, int length, int level, ForkJoinTask<Integer> sample) {
+            this.entry = entry;
+            this.variant = variant;
+            this.index = index;
+            this.count = count;
+            this.position = position;
+            this.length = length;
+            this.level = level;
+            this.sample = sample;
+        }
+    }
+
+    // Without a cache, every entry is compressed again.
+    public ParallelZipWriter(ForkJoinPool pool, CompressionPolicy policy, ContentCache cache, SourceReader reader, BuildMetrics metrics) {
+        this.pool = pool;
+        this.policy = policy;
+        this.cache = cache;
+        this.reader = reader;
+        this.metrics = metrics;
+    }
+}
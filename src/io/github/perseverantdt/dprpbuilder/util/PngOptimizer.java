@@ -0,0 +1,309 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Recompresses PNG files without changing a single pixel. Ancillary chunks other than transparency are dropped, since
+// the game ignores them, and the image data is filtered and deflated again with every filter strategy, keeping the
+// smallest. Results are cached by the hash of the original file, so every texture is only optimized once.
+public class PngOptimizer {
+    // Part of the cache namespace and the build settings. Raise it whenever the output of the optimizer changes.
+    public static final int VERSION = 1;
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    static final int ADAPTIVE = 5;
+
+    ContentCache cache;
+    BuildMetrics metrics;
+
+    // Optimizes every PNG file of the pack on the pool. Files that cannot be made smaller are left as they are.
+    public List<PackEntry> optimize(List<PackEntry> entries, ForkJoinPool pool) throws IOException {
+        return EntryTransform.apply(entries, pool, entry -> !entry.isInMemory() && entry.getName().endsWith(".png"), this::optimize);
+    }
+    public PackEntry optimize(PackEntry entry) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.TRANSFORM);
+        byte[] original = Files.readAllBytes(entry.getSource());
+        String hash = ContentCache.hash(original);
+        // An empty result means that the file was already as small as it gets.
+        byte[] optimized = cache != null ? cache.get("png" + VERSION, hash) : null;
+        if (optimized == null) {
+            optimized = optimize(original);
+            if (optimized == null || optimized.length >= original.length) optimized = new byte[0];
+            if (cache != null) cache.put("png" + VERSION, hash, optimized);
+        }
+        span.end(entry.getName(), original.length, optimized.length > 0 ? optimized.length : original.length);
+
+        return optimized.length > 0 ? entry.withContent(optimized) : entry;
+    }
+
+    // Returns null for files that are not PNG files or that use something the optimizer does not handle, like
+    // interlacing, animation or unknown critical chunks.
+    public static byte[] optimize(byte[] png) {
+        if (png.length < SIGNATURE.length || !ByteBuffer.wrap(png, 0, SIGNATURE.length).equals(ByteBuffer.wrap(SIGNATURE))) return null;
+
+        ByteBuffer input = ByteBuffer.wrap(png);
+        input.position(SIGNATURE.length);
+        byte[] header = null;
+        byte[] palette = null;
+        byte[] transparency = null;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(png.length);
+        boolean ended = false;
+        while (!ended) {
+            if (input.remaining() < 12) return null;
+            int length = input.getInt();
+            if (length < 0 || input.remaining() < length + 8) return null;
+            byte[] typeAndData = new byte[4 + length];
+            input.get(typeAndData);
+            CRC32 crc = new CRC32();
+            crc.update(typeAndData);
+            if ((int) crc.getValue() != input.getInt()) return null;
+
+            String type = new String(typeAndData, 0, 4, StandardCharsets.ISO_8859_1);
+            switch (type) {
+                case "IHDR":
+                    header = typeAndData;
+                    break;
+                case "PLTE":
+                    palette = typeAndData;
+                    break;
+                case "tRNS":
+                    transparency = typeAndData;
+                    break;
+                case "IDAT":
+                    compressed.write(typeAndData, 4, length);
+                    break;
+                case "IEND":
+                    ended = true;
+                    break;
+                case "acTL":
+                    // Animated PNGs keep their frames in ancillary chunks, which must not be dropped.
+                    return null;
+                default:
+                    if (Character.isUpperCase(type.charAt(0))) return null;
+            }
+        }
+        if (header == null || header.length != 4 + 13) return null;
+
+        ByteBuffer ihdr = ByteBuffer.wrap(header, 4, 13);
+        int width = ihdr.getInt();
+        int height = ihdr.getInt();
+        int bitDepth = header[12] & 0xFF;
+        int colorType = header[13] & 0xFF;
+        int interlace = header[16] & 0xFF;
+        if (Integer.bitCount(bitDepth) != 1 || bitDepth > 16) return null;
+        int channels;
+        switch (colorType) {
+            case 0:
+            case 3:
+                channels = 1;
+                break;
+            case 2:
+                channels = 3;
+                break;
+            case 4:
+                channels = 2;
+                break;
+            case 6:
+                channels = 4;
+                break;
+            default:
+                return null;
+        }
+        if (interlace != 0 || width <= 0 || height <= 0 || header[14] != 0 || header[15] != 0) return null;
+        long bitsPerRow = (long) width * channels * bitDepth;
+        long rawSize = ((bitsPerRow + 7) / 8 + 1) * height;
+        if (rawSize > Integer.MAX_VALUE - 8) return null;
+        int rowLength = (int) ((bitsPerRow + 7) / 8);
+        int bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+
+        byte[] filtered = inflate(compressed.toByteArray(), (int) rawSize);
+        if (filtered == null) return null;
+        byte[][] rows = unfilter(filtered, height, rowLength, bytesPerPixel);
+        if (rows == null) return null;
+
+        byte[] smallest = null;
+        for (int strategy = 0; strategy <= ADAPTIVE; strategy++) {
+            byte[] deflated = deflate(filter(rows, rowLength, bytesPerPixel, strategy));
+            if (smallest == null || deflated.length < smallest.length) smallest = deflated;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(smallest.length + 256);
+        output.write(SIGNATURE, 0, SIGNATURE.length);
+        writeChunk(output, header);
+        if (palette != null) writeChunk(output, palette);
+        if (transparency != null) writeChunk(output, transparency);
+        byte[] data = new byte[4 + smallest.length];
+        data[0] = 'I';
+        data[1] = 'D';
+        data[2] = 'A';
+        data[3] = 'T';
+        System.arraycopy(smallest, 0, data, 4, smallest.length);
+        writeChunk(output, data);
+        writeChunk(output, new byte[] {'I', 'E', 'N', 'D'});
+        return output.toByteArray();
+    }
+
+    static byte[] inflate(byte[] compressed, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] output = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int read = inflater.inflate(output, length, size - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) return null;
+                length += read;
+            }
+            return length == size ? output : null;
+        }
+        catch (DataFormatException e) {
+            return null;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[1 << 15];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    static byte[][] unfilter(byte[] filtered, int height, int rowLength, int bytesPerPixel) {
+        byte[][] rows = new byte[height][];
+        byte[] previous = new byte[rowLength];
+        for (int y = 0; y < height; y++) {
+            int offset = y * (rowLength + 1);
+            int type = filtered[offset];
+            byte[] row = new byte[rowLength];
+            System.arraycopy(filtered, offset + 1, row, 0, rowLength);
+            for (int i = 0; i < rowLength; i++) {
+                int a = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                int b = previous[i] & 0xFF;
+                int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+                switch (type) {
+                    case 0:
+                        break;
+                    case 1:
+                        row[i] += a;
+                        break;
+                    case 2:
+                        row[i] += b;
+                        break;
+                    case 3:
+                        row[i] += (a + b) >>> 1;
+                        break;
+                    case 4:
+                        row[i] += paeth(a, b, c);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            rows[y] = row;
+            previous = row;
+        }
+        return rows;
+    }
+    // Filters every row with the same filter type, or with strategy ADAPTIVE, with whichever type gives the smallest sum
+    // of absolute differences for each row, as the PNG specification suggests.
+    static byte[] filter(byte[][] rows, int rowLength, int bytesPerPixel, int strategy) {
+        byte[] filtered = new byte[rows.length * (rowLength + 1)];
+        byte[] previous = new byte[rowLength];
+        byte[] candidate = new byte[rowLength];
+        for (int y = 0; y < rows.length; y++) {
+            int offset = y * (rowLength + 1);
+            int type = strategy;
+            if (strategy == ADAPTIVE) {
+                long best = Long.MAX_VALUE;
+                for (int t = 0; t < ADAPTIVE; t++) {
+                    filterRow(rows[y], previous, candidate, bytesPerPixel, t);
+                    long sum = 0;
+                    for (byte value : candidate) {
+                        sum += Math.abs(value);
+                    }
+                    if (sum < best) {
+                        best = sum;
+                        type = t;
+                    }
+                }
+            }
+            filtered[offset] = (byte) type;
+            filterRow(rows[y], previous, candidate, bytesPerPixel, type);
+            System.arraycopy(candidate, 0, filtered, offset + 1, rowLength);
+            previous = rows[y];
+        }
+        return filtered;
+    }
+    static void filterRow(byte[] row, byte[] previous, byte[] output, int bytesPerPixel, int type) {
+        for (int i = 0; i < row.length; i++) {
+            int a = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+            int b = previous[i] & 0xFF;
+            int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+            int x = row[i] & 0xFF;
+            switch (type) {
+                case 0:
+                    output[i] = (byte) x;
+                    break;
+                case 1:
+                    output[i] = (byte) (x - a);
+                    break;
+                case 2:
+                    output[i] = (byte) (x - b);
+                    break;
+                case 3:
+                    output[i] = (byte) (x - ((a + b) >>> 1));
+                    break;
+                default:
+                    output[i] = (byte) (x - paeth(a, b, c));
+            }
+        }
+    }
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+    static void writeChunk(ByteArrayOutputStream output, byte[] typeAndData) {
+        int length = typeAndData.length - 4;
+        output.write(length >>> 24);
+        output.write(length >>> 16);
+        output.write(length >>> 8);
+        output.write(length);
+        output.write(typeAndData, 0, typeAndData.length);
+        CRC32 crc = new CRC32();
+        crc.update(typeAndData);
+        int value = (int) crc.getValue();
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    // Without a cache, every build optimizes every file again.
+    public PngOptimizer(ContentCache cache, BuildMetrics metrics) {
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+}
@@ -4,20 +4,52 @@ import com.github.ushiosan23.simple_ini.SimpleIni;
 import com.github.ushiosan23.simple_ini.section.SimpleSection;
 import com.github.zafarkhaja.semver.Version;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class ProgramConfigs {
-    Version targetVersion;
+    // Every key readIniFile reads, by section. Command line overrides of any other key are rejected.
+    static final Map<String, Set<String>> KEYS = Map.of(
+        "General", Set.of("targetVersion", "supportedVersions", "packFormats", "buildVersion", "outputPath", "packpngPath", "readmePath", "licensePath", "streamZip", "reproducible", "compressionThreads", "compressionPolicy", "autoCompressionRatio", "maxCompressionIterations", "maxCompressionTime", "metricsReport", "metricsSlowestFiles", "jfrEvents", "cachePath", "cacheSizeLimit", "cacheZipEntries", "memoryMapThreshold"),
+        "Datapack", Set.of("name", "description", "dataFolderPath", "buildZipped", "packpngPath", "readmePath", "licensePath", "overwrite", "incremental", "hardLinks", "minifyJson", "preprocessFunctions", "entryFunctions", "validateReferences", "compressionPolicy"),
+        "ResourcePack", Set.of("name", "description", "assetsFolderPath", "buildZipped", "packpngPath", "readmePath", "licensePath", "overwrite", "incremental", "hardLinks", "minifyJson", "optimizePng", "pruneUnused", "pruneRoots", "pruneReport", "deduplicate", "maxPackSize", "compressionPolicy")
+    );
+
+    List<Version> targetVersions;
+    List<Version> supportedVersions;
+    Map<String, PackFormatIndex> packFormats;
     Version buildVersion;
     Path outputPath;
     Path generalPackPngPath;
     Path generalReadMePath;
     Path generalLicensePath;
+    boolean streamZip;
+    boolean reproducible;
+    int compressionThreads;
+    String compressionPolicy;
+    double autoCompressionRatio;
+    int maxCompressionIterations;
+    long maxCompressionTime;
+    Path metricsReportPath;
+    int metricsSlowestFiles;
+    boolean jfrEvents;
+    Path cachePath;
+    long cacheSizeLimit;
+    boolean cacheZipEntries;
+    long memoryMapThreshold;
 
     String datapackName;
     String datapackDescription;
@@ -27,6 +59,13 @@ public class ProgramConfigs {
     Path datapackReadMePath;
     Path datapackLicensePath;
     boolean datapackOverwriteOutput;
+    boolean datapackIncremental;
+    boolean datapackHardLinks;
+    boolean datapackMinifyJson;
+    boolean datapackPreprocessFunctions;
+    List<String> datapackEntryFunctions;
+    boolean datapackValidateReferences;
+    String datapackCompressionPolicy;
 
     String assetPackName;
     String assetPackDescription;
@@ -36,9 +75,41 @@ public class ProgramConfigs {
     Path assetPackReadMePath;
     Path assetPackLicensePath;
     boolean assetPackOverwriteOutput;
+    boolean assetPackIncremental;
+    boolean assetPackHardLinks;
+    boolean assetPackMinifyJson;
+    boolean assetPackOptimizePng;
+    boolean assetPackPruneUnused;
+    List<String> assetPackPruneRoots;
+    Path assetPackPruneReportPath;
+    boolean assetPackDeduplicate;
+    long assetPackMaxPackSize;
+    String assetPackCompressionPolicy;
 
+    // The first target version is used when only one pack is built.
     public Version getTargetVersion() {
-        return targetVersion;
+        return !targetVersions.isEmpty() ? targetVersions.get(0) : null;
+    }
+    public List<Version> getTargetVersions() {
+        return targetVersions;
+    }
+    public boolean isMultipleTargets() {
+        return targetVersions.size() > 1;
+    }
+    public List<Version> getSupportedVersions() {
+        return supportedVersions;
+    }
+    public PackFormat getDatapackFormat() {
+        return packFormats.get(PackFormatIndex.DATAPACK).getFormat(getTargetVersion(), supportedVersions);
+    }
+    public Map<Version, PackFormat> getDatapackFormats() {
+        return getFormats(PackFormatIndex.DATAPACK);
+    }
+    public PackFormat getAssetPackFormat() {
+        return packFormats.get(PackFormatIndex.RESOURCE_PACK).getFormat(getTargetVersion(), supportedVersions);
+    }
+    public Map<Version, PackFormat> getAssetPackFormats() {
+        return getFormats(PackFormatIndex.RESOURCE_PACK);
     }
     public Version getBuildVersion() {
         return buildVersion;
@@ -55,6 +126,48 @@ public class ProgramConfigs {
     public Path getGeneralLicensePath() {
         return generalLicensePath;
     }
+    public boolean isStreamZip() {
+        return streamZip;
+    }
+    public boolean isReproducible() {
+        return reproducible;
+    }
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+    public String getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    public double getAutoCompressionRatio() {
+        return autoCompressionRatio;
+    }
+    public int getMaxCompressionIterations() {
+        return maxCompressionIterations;
+    }
+    public long getMaxCompressionTime() {
+        return maxCompressionTime;
+    }
+    public Path getMetricsReportPath() {
+        return metricsReportPath;
+    }
+    public int getMetricsSlowestFiles() {
+        return metricsSlowestFiles;
+    }
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+    public Path getCachePath() {
+        return cachePath;
+    }
+    public long getCacheSizeLimit() {
+        return cacheSizeLimit;
+    }
+    public boolean isCacheZipEntries() {
+        return cacheZipEntries;
+    }
+    public long getMemoryMapThreshold() {
+        return memoryMapThreshold;
+    }
     public String getDatapackName() {
         return datapackName;
     }
@@ -79,6 +192,27 @@ public class ProgramConfigs {
     public boolean isDatapackOverwriteOutput() {
         return datapackOverwriteOutput;
     }
+    public boolean isDatapackIncremental() {
+        return datapackIncremental;
+    }
+    public boolean isDatapackHardLinks() {
+        return datapackHardLinks;
+    }
+    public boolean isDatapackMinifyJson() {
+        return datapackMinifyJson;
+    }
+    public boolean isDatapackPreprocessFunctions() {
+        return datapackPreprocessFunctions;
+    }
+    public List<String> getDatapackEntryFunctions() {
+        return datapackEntryFunctions;
+    }
+    public boolean isDatapackValidateReferences() {
+        return datapackValidateReferences;
+    }
+    public String getDatapackCompressionPolicy() {
+        return datapackCompressionPolicy;
+    }
     public String getAssetPackName() {
         return assetPackName;
     }
@@ -103,6 +237,65 @@ public class ProgramConfigs {
     public boolean isAssetPackOverwriteOutput() {
         return assetPackOverwriteOutput;
     }
+    public boolean isAssetPackIncremental() {
+        return assetPackIncremental;
+    }
+    public boolean isAssetPackHardLinks() {
+        return assetPackHardLinks;
+    }
+    public boolean isAssetPackMinifyJson() {
+        return assetPackMinifyJson;
+    }
+    public boolean isAssetPackOptimizePng() {
+        return assetPackOptimizePng;
+    }
+    public boolean isAssetPackPruneUnused() {
+        return assetPackPruneUnused;
+    }
+    public List<String> getAssetPackPruneRoots() {
+        return assetPackPruneRoots;
+    }
+    public Path getAssetPackPruneReportPath() {
+        return assetPackPruneReportPath;
+    }
+    public boolean isAssetPackDeduplicate() {
+        return assetPackDeduplicate;
+    }
+    public long getAssetPackMaxPackSize() {
+        return assetPackMaxPackSize;
+    }
+    public String getAssetPackCompressionPolicy() {
+        return assetPackCompressionPolicy;
+    }
+    public BuildOptions createDatapackBuildOptions(ForkJoinPool compressionPool) {
+        return new BuildOptions(compressionPool, createCompressionPolicy(datapackCompressionPolicy), datapackIncremental, datapackHardLinks, datapackMinifyJson, false, false, List.of(), null, false, 0, datapackPreprocessFunctions, datapackEntryFunctions, datapackValidateReferences, reproducible, createCache(), cacheZipEntries, createSourceReader());
+    }
+    public BuildOptions createAssetPackBuildOptions(ForkJoinPool compressionPool) {
+        return new BuildOptions(compressionPool, createCompressionPolicy(assetPackCompressionPolicy), assetPackIncremental, assetPackHardLinks, assetPackMinifyJson, assetPackOptimizePng, assetPackPruneUnused, assetPackPruneRoots, assetPackPruneReportPath, assetPackDeduplicate, assetPackMaxPackSize * 1024 * 1024, false, List.of(), false, reproducible, createCache(), cacheZipEntries, createSourceReader());
+    }
+    Map<Version, PackFormat> getFormats(String packType) {
+        LinkedHashMap<Version, PackFormat> formats = new LinkedHashMap<>();
+        for (Version targetVersion : targetVersions) {
+            formats.put(targetVersion, packFormats.get(packType).getFormat(targetVersion, supportedVersions));
+        }
+        return formats;
+    }
+    public SourceReader createSourceReader() {
+        // The threshold is set in kilobytes.
+        return new SourceReader(memoryMapThreshold * 1024);
+    }
+    public ContentCache createCache() {
+        // The size limit is set in megabytes.
+        return cachePath != null ? new ContentCache(cachePath, cacheSizeLimit * 1024 * 1024) : null;
+    }
+    // A pack's own policy replaces the general one. Reproducible builds ignore the time limit, since how far the
+    // exhaustive compression gets in it depends on the machine.
+    public CompressionPolicy createCompressionPolicy(String packPolicy) {
+        return CompressionPolicy.parse(packPolicy != null ? packPolicy : compressionPolicy, autoCompressionRatio, maxCompressionIterations, reproducible ? 0 : maxCompressionTime);
+    }
+    public static boolean isKey(String section, String key) {
+        return KEYS.getOrDefault(section, Set.of()).contains(key);
+    }
     public static ProgramConfigs fromIniFile(Path iniFile) throws IOException {
         if (Files.notExists(iniFile)) throw new IOException("Could not find the specified file: " + iniFile);
         SimpleIni<SimpleSection> iniConfig = new SimpleIni<>();
@@ -114,13 +307,58 @@ public class ProgramConfigs {
         iniConfig.load(iniStream);
         return readIniFile(iniConfig, streamName);
     }
+    // Reads the ini text with the given values replacing the ones in it. Overrides are keyed "Section.key", and keys
+    // that are not in the text yet are added to the end of their section.
+    public static ProgramConfigs fromIniText(String iniText, String iniName, Map<String, String> overrides) throws IOException {
+        LinkedHashMap<String, String> remaining = new LinkedHashMap<>(overrides);
+        StringBuilder merged = new StringBuilder();
+        String section = "";
+        for (String line : iniText.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                appendOverrides(merged, section, remaining);
+                section = trimmed.substring(1, trimmed.length() - 1).trim();
+            }
+            else if (!trimmed.startsWith(";") && !trimmed.startsWith("#") && trimmed.contains("=")) {
+                String key = trimmed.substring(0, trimmed.indexOf('=')).trim();
+                String value = remaining.remove(section + "." + key);
+                if (value != null) line = key + "=" + value;
+            }
+            merged.append(line).append('\n');
+        }
+        appendOverrides(merged, section, remaining);
+        while (!remaining.isEmpty()) {
+            String newSection = remaining.keySet().iterator().next();
+            newSection = newSection.substring(0, newSection.indexOf('.'));
+            merged.append('[').append(newSection).append("]\n");
+            appendOverrides(merged, newSection, remaining);
+        }
+
+        return fromIniStream(new ByteArrayInputStream(merged.toString().getBytes(StandardCharsets.UTF_8)), iniName);
+    }
     public void replaceWith(ProgramConfigs newConfigs) {
-        if (newConfigs.targetVersion != null) targetVersion = newConfigs.targetVersion;
+        if (!newConfigs.targetVersions.isEmpty()) targetVersions = newConfigs.targetVersions;
+        supportedVersions = newConfigs.supportedVersions;
+        packFormats = newConfigs.packFormats;
         if (newConfigs.buildVersion != null) buildVersion = newConfigs.buildVersion;
         if (newConfigs.outputPath != null) outputPath = newConfigs.outputPath;
         if (newConfigs.generalPackPngPath != null) generalPackPngPath = newConfigs.generalPackPngPath;
         if (newConfigs.generalReadMePath != null) generalReadMePath = newConfigs.generalReadMePath;
         if (newConfigs.generalLicensePath != null) generalLicensePath = newConfigs.generalLicensePath;
+        streamZip = newConfigs.streamZip;
+        reproducible = newConfigs.reproducible;
+        compressionThreads = newConfigs.compressionThreads;
+        if (newConfigs.compressionPolicy != null) compressionPolicy = newConfigs.compressionPolicy;
+        autoCompressionRatio = newConfigs.autoCompressionRatio;
+        maxCompressionIterations = newConfigs.maxCompressionIterations;
+        maxCompressionTime = newConfigs.maxCompressionTime;
+        metricsReportPath = newConfigs.metricsReportPath;
+        metricsSlowestFiles = newConfigs.metricsSlowestFiles;
+        jfrEvents = newConfigs.jfrEvents;
+        cachePath = newConfigs.cachePath;
+        cacheSizeLimit = newConfigs.cacheSizeLimit;
+        cacheZipEntries = newConfigs.cacheZipEntries;
+        memoryMapThreshold = newConfigs.memoryMapThreshold;
         if (newConfigs.datapackName != null) datapackName = newConfigs.datapackName;
         if (newConfigs.datapackDescription != null) datapackDescription = newConfigs.datapackDescription;
         if (newConfigs.dataFolderPath != null) dataFolderPath = newConfigs.dataFolderPath;
@@ -129,6 +367,13 @@ public class ProgramConfigs {
         if (newConfigs.datapackReadMePath != null) datapackReadMePath = newConfigs.datapackReadMePath;
         if (newConfigs.datapackLicensePath != null) datapackLicensePath = newConfigs.datapackLicensePath;
         datapackOverwriteOutput = newConfigs.datapackOverwriteOutput;
+        datapackIncremental = newConfigs.datapackIncremental;
+        datapackHardLinks = newConfigs.datapackHardLinks;
+        datapackMinifyJson = newConfigs.datapackMinifyJson;
+        datapackPreprocessFunctions = newConfigs.datapackPreprocessFunctions;
+        datapackEntryFunctions = newConfigs.datapackEntryFunctions;
+        datapackValidateReferences = newConfigs.datapackValidateReferences;
+        if (newConfigs.datapackCompressionPolicy != null) datapackCompressionPolicy = newConfigs.datapackCompressionPolicy;
         if (newConfigs.assetPackName != null) assetPackName = newConfigs.assetPackName;
         if (newConfigs.assetPackDescription != null) assetPackDescription = newConfigs.assetPackDescription;
         if (newConfigs.assetFolderPath != null) assetFolderPath = newConfigs.assetFolderPath;
@@ -137,17 +382,65 @@ public class ProgramConfigs {
         if (newConfigs.assetPackReadMePath != null) assetPackReadMePath = newConfigs.assetPackReadMePath;
         if (newConfigs.assetPackLicensePath != null) assetPackLicensePath = newConfigs.assetPackLicensePath;
         assetPackOverwriteOutput = newConfigs.assetPackOverwriteOutput;
+        assetPackIncremental = newConfigs.assetPackIncremental;
+        assetPackHardLinks = newConfigs.assetPackHardLinks;
+        assetPackMinifyJson = newConfigs.assetPackMinifyJson;
+        assetPackOptimizePng = newConfigs.assetPackOptimizePng;
+        assetPackPruneUnused = newConfigs.assetPackPruneUnused;
+        assetPackPruneRoots = newConfigs.assetPackPruneRoots;
+        assetPackPruneReportPath = newConfigs.assetPackPruneReportPath;
+        assetPackDeduplicate = newConfigs.assetPackDeduplicate;
+        assetPackMaxPackSize = newConfigs.assetPackMaxPackSize;
+        if (newConfigs.assetPackCompressionPolicy != null) assetPackCompressionPolicy = newConfigs.assetPackCompressionPolicy;
     }
 
-    static ProgramConfigs readIniFile(SimpleIni<SimpleSection> iniConfig, String iniPath) throws NoSuchElementException {
+    static void appendOverrides(StringBuilder merged, String section, Map<String, String> remaining) {
+        Iterator<Map.Entry<String, String>> overrides = remaining.entrySet().iterator();
+        while (overrides.hasNext()) {
+            Map.Entry<String, String> override = overrides.next();
+            if (!override.getKey().startsWith(section + ".")) continue;
+
+            merged.append(override.getKey().substring(section.length() + 1)).append('=').append(override.getValue()).append('\n');
+            overrides.remove();
+        }
+    }
+    static ProgramConfigs readIniFile(SimpleIni<SimpleSection> iniConfig, String iniPath) throws IOException, NoSuchElementException {
         if (!iniConfig.sectionExists("General"))
             throw new NoSuchElementException(String.format("Could not find a required section in %1$s: Missing [General]", iniPath));
         SimpleSection generalConfigs = iniConfig.getSection("General").orElseThrow();
 
-        Version targetVersion = null;
-        Optional<String> _targetVersion = generalConfigs.get("targetVersion");
-        if (_targetVersion.isPresent()) {
-            targetVersion = Version.valueOf(_targetVersion.get());
+        // Several target versions build one pack for each, in the order they are listed.
+        ArrayList<Version> targetVersions = new ArrayList<>();
+        Optional<String> _targetVersions = generalConfigs.get("targetVersion");
+        if (_targetVersions.isPresent()) {
+            for (String targetVersion : _targetVersions.get().split(",")) {
+                if (targetVersion.isBlank()) continue;
+                Version version = PackFormatIndex.parseVersion(targetVersion);
+                if (!targetVersions.contains(version)) targetVersions.add(version);
+            }
+        }
+        ArrayList<Version> supportedVersions = new ArrayList<>();
+        Optional<String> _supportedVersions = generalConfigs.get("supportedVersions");
+        if (_supportedVersions.isPresent()) {
+            for (String supportedVersion : _supportedVersions.get().split(",")) {
+                if (!supportedVersion.isBlank()) supportedVersions.add(PackFormatIndex.parseVersion(supportedVersion));
+            }
+        }
+        // The pack formats are read here so that a wrong table or target version is reported before anything is built.
+        Map<String, PackFormatIndex> packFormats = PackFormatIndex.getBundled();
+        Optional<String> _packFormatsPath = generalConfigs.get("packFormats");
+        if (_packFormatsPath.isPresent() && !_packFormatsPath.get().equals("")) {
+            packFormats = PackFormatIndex.load(Path.of(_packFormatsPath.get()));
+        }
+        for (String packType : List.of(PackFormatIndex.DATAPACK, PackFormatIndex.RESOURCE_PACK)) {
+            PackFormatIndex index = packFormats.get(packType);
+            if (index == null) throw new NoSuchElementException(String.format("Could not find the %1$s formats in the pack format tables of %2$s", packType, iniPath));
+            for (Version targetVersion : targetVersions) {
+                index.getFormat(targetVersion, supportedVersions);
+                if (index.isNewerThanTable(targetVersion)) {
+                    System.out.printf("Minecraft %1$s is newer than every version in the %2$s format table, so format %3$d of %4$s is used.\n", targetVersion, packType, index.getNewest().getFormat(), index.getNewest().getVersions());
+                }
+            }
         }
         Optional<String> _buildVersion = generalConfigs.get("buildVersion");
         Version buildVersion = null;
@@ -177,6 +470,59 @@ public class ProgramConfigs {
             generalLicensePath = Path.of(_generalLicensePath.get());
             if (Files.notExists(generalLicensePath)) generalLicensePath = null;
         }
+        boolean streamZip = generalConfigs.getAsBooleanOrDefault("streamZip", true);
+        boolean reproducible = generalConfigs.getAsBooleanOrDefault("reproducible", false);
+        int compressionThreads = 0;
+        Optional<String> _compressionThreads = generalConfigs.get("compressionThreads");
+        if (_compressionThreads.isPresent() && !_compressionThreads.get().equals("")) {
+            compressionThreads = Integer.parseInt(_compressionThreads.get().trim());
+            if (compressionThreads < 0) throw new NumberFormatException(String.format("compressionThreads in %1$s must not be negative.", iniPath));
+        }
+        String compressionPolicy = null;
+        Optional<String> _compressionPolicy = generalConfigs.get("compressionPolicy");
+        if (_compressionPolicy.isPresent() && !_compressionPolicy.get().equals("")) compressionPolicy = _compressionPolicy.get();
+        double autoCompressionRatio = 1.1;
+        Optional<String> _autoCompressionRatio = generalConfigs.get("autoCompressionRatio");
+        if (_autoCompressionRatio.isPresent() && !_autoCompressionRatio.get().equals("")) {
+            autoCompressionRatio = Double.parseDouble(_autoCompressionRatio.get().trim());
+        }
+        int maxCompressionIterations = 15;
+        Optional<String> _maxCompressionIterations = generalConfigs.get("maxCompressionIterations");
+        if (_maxCompressionIterations.isPresent() && !_maxCompressionIterations.get().equals("")) {
+            maxCompressionIterations = Integer.parseInt(_maxCompressionIterations.get().trim());
+        }
+        long maxCompressionTime = 0;
+        Optional<String> _maxCompressionTime = generalConfigs.get("maxCompressionTime");
+        if (_maxCompressionTime.isPresent() && !_maxCompressionTime.get().equals("")) {
+            maxCompressionTime = Long.parseLong(_maxCompressionTime.get().trim());
+        }
+        Path metricsReportPath = null;
+        Optional<String> _metricsReportPath = generalConfigs.get("metricsReport");
+        if (_metricsReportPath.isPresent() && !_metricsReportPath.get().equals("")) metricsReportPath = Path.of(_metricsReportPath.get());
+        int metricsSlowestFiles = 10;
+        Optional<String> _metricsSlowestFiles = generalConfigs.get("metricsSlowestFiles");
+        if (_metricsSlowestFiles.isPresent() && !_metricsSlowestFiles.get().equals("")) {
+            metricsSlowestFiles = Integer.parseInt(_metricsSlowestFiles.get().trim());
+            if (metricsSlowestFiles < 0) throw new NumberFormatException(String.format("metricsSlowestFiles in %1$s must not be negative.", iniPath));
+        }
+        boolean jfrEvents = generalConfigs.getAsBooleanOrDefault("jfrEvents", false);
+        Path cachePath = null;
+        Optional<String> _cachePath = generalConfigs.get("cachePath");
+        if (_cachePath.isPresent() && !_cachePath.get().equals("")) cachePath = Path.of(_cachePath.get());
+        long cacheSizeLimit = 1024;
+        Optional<String> _cacheSizeLimit = generalConfigs.get("cacheSizeLimit");
+        if (_cacheSizeLimit.isPresent() && !_cacheSizeLimit.get().equals("")) {
+            cacheSizeLimit = Long.parseLong(_cacheSizeLimit.get().trim());
+            if (cacheSizeLimit < 0) throw new NumberFormatException(String.format("cacheSizeLimit in %1$s must not be negative.", iniPath));
+        }
+        boolean cacheZipEntries = generalConfigs.getAsBooleanOrDefault("cacheZipEntries", false);
+        long memoryMapThreshold = 1024;
+        Optional<String> _memoryMapThreshold = generalConfigs.get("memoryMapThreshold");
+        if (_memoryMapThreshold.isPresent() && !_memoryMapThreshold.get().equals("")) {
+            memoryMapThreshold = Long.parseLong(_memoryMapThreshold.get().trim());
+            if (memoryMapThreshold < 0) throw new NumberFormatException(String.format("memoryMapThreshold in %1$s must not be negative.", iniPath));
+        }
+        CompressionPolicy.parse(compressionPolicy, autoCompressionRatio, maxCompressionIterations, maxCompressionTime);
 
         if (!iniConfig.sectionExists("Datapack")) {
             throw new NoSuchElementException(String.format("Could not find a required section in %1$s: Missing [Datapack]", iniPath));
@@ -214,6 +560,22 @@ public class ProgramConfigs {
             if (Files.notExists(datapackLicensePath)) datapackLicensePath = null;
         }
         boolean datapackOverwriteOutput = datapackConfigs.getAsBooleanOrDefault("overwrite", false);
+        boolean datapackIncremental = datapackConfigs.getAsBooleanOrDefault("incremental", false);
+        boolean datapackHardLinks = datapackConfigs.getAsBooleanOrDefault("hardLinks", false);
+        boolean datapackMinifyJson = datapackConfigs.getAsBooleanOrDefault("minifyJson", false);
+        boolean datapackPreprocessFunctions = datapackConfigs.getAsBooleanOrDefault("preprocessFunctions", false);
+        ArrayList<String> datapackEntryFunctions = new ArrayList<>();
+        Optional<String> _datapackEntryFunctions = datapackConfigs.get("entryFunctions");
+        if (_datapackEntryFunctions.isPresent()) {
+            for (String entryFunction : _datapackEntryFunctions.get().split(",")) {
+                if (!entryFunction.isBlank()) datapackEntryFunctions.add(entryFunction.trim());
+            }
+        }
+        boolean datapackValidateReferences = datapackConfigs.getAsBooleanOrDefault("validateReferences", false);
+        String datapackCompressionPolicy = null;
+        Optional<String> _datapackCompressionPolicy = datapackConfigs.get("compressionPolicy");
+        if (_datapackCompressionPolicy.isPresent() && !_datapackCompressionPolicy.get().equals("")) datapackCompressionPolicy = _datapackCompressionPolicy.get();
+        CompressionPolicy.parse(datapackCompressionPolicy != null ? datapackCompressionPolicy : compressionPolicy, autoCompressionRatio, maxCompressionIterations, maxCompressionTime);
 
         if (!iniConfig.sectionExists("ResourcePack")) {
             throw new NoSuchElementException(String.format("Could not find a required section in %1$s: Missing [Resource Pack]", iniPath));
@@ -251,17 +613,57 @@ public class ProgramConfigs {
             if (Files.notExists(resourcePackLicensePath)) resourcePackLicensePath = null;
         }
         boolean resourcePackOverwriteOutput = resourcePackConfigs.getAsBooleanOrDefault("overwrite", false);
+        boolean resourcePackIncremental = resourcePackConfigs.getAsBooleanOrDefault("incremental", false);
+        boolean resourcePackHardLinks = resourcePackConfigs.getAsBooleanOrDefault("hardLinks", false);
+        boolean resourcePackMinifyJson = resourcePackConfigs.getAsBooleanOrDefault("minifyJson", false);
+        boolean resourcePackOptimizePng = resourcePackConfigs.getAsBooleanOrDefault("optimizePng", false);
+        boolean resourcePackPruneUnused = resourcePackConfigs.getAsBooleanOrDefault("pruneUnused", false);
+        ArrayList<String> resourcePackPruneRoots = new ArrayList<>();
+        Optional<String> _resourcePackPruneRoots = resourcePackConfigs.get("pruneRoots");
+        for (String pruneRoot : _resourcePackPruneRoots.orElse("assets/minecraft/**, assets/*/models/equipment/**").split(",")) {
+            if (!pruneRoot.isBlank()) resourcePackPruneRoots.add(pruneRoot.trim());
+        }
+        Path resourcePackPruneReportPath = null;
+        Optional<String> _resourcePackPruneReportPath = resourcePackConfigs.get("pruneReport");
+        if (_resourcePackPruneReportPath.isPresent() && !_resourcePackPruneReportPath.get().equals("")) resourcePackPruneReportPath = Path.of(_resourcePackPruneReportPath.get());
+        boolean resourcePackDeduplicate = resourcePackConfigs.getAsBooleanOrDefault("deduplicate", false);
+        long resourcePackMaxPackSize = 0;
+        Optional<String> _resourcePackMaxPackSize = resourcePackConfigs.get("maxPackSize");
+        if (_resourcePackMaxPackSize.isPresent() && !_resourcePackMaxPackSize.get().equals("")) {
+            resourcePackMaxPackSize = Long.parseLong(_resourcePackMaxPackSize.get().trim());
+            if (resourcePackMaxPackSize < 0) throw new NumberFormatException(String.format("maxPackSize in %1$s must not be negative.", iniPath));
+        }
+        String resourcePackCompressionPolicy = null;
+        Optional<String> _resourcePackCompressionPolicy = resourcePackConfigs.get("compressionPolicy");
+        if (_resourcePackCompressionPolicy.isPresent() && !_resourcePackCompressionPolicy.get().equals("")) resourcePackCompressionPolicy = _resourcePackCompressionPolicy.get();
+        CompressionPolicy.parse(resourcePackCompressionPolicy != null ? resourcePackCompressionPolicy : compressionPolicy, autoCompressionRatio, maxCompressionIterations, maxCompressionTime);
 
-        return new ProgramConfigs(targetVersion, buildVersion, outputPath, generalPackPngPath, generalReadMePath, generalLicensePath, datapackName, datapackDescription, dataFolderPath, datapackBuildZipped, datapackPackPngPath, datapackReadMePath, datapackLicensePath, datapackOverwriteOutput, resourcePackName, resourcePackDescription, assetFolderPath, resourcePackBuildZipped, resourcePackPackPngPath, resourcePackReadMePath, resourcePackLicensePath, resourcePackOverwriteOutput);
+        return new ProgramConfigs(targetVersions, supportedVersions, packFormats, buildVersion, outputPath, generalPackPngPath, generalReadMePath, generalLicensePath, streamZip, reproducible, compressionThreads, compressionPolicy, autoCompressionRatio, maxCompressionIterations, maxCompressionTime, metricsReportPath, metricsSlowestFiles, jfrEvents, cachePath, cacheSizeLimit, cacheZipEntries, memoryMapThreshold, datapackName, datapackDescription, dataFolderPath, datapackBuildZipped, datapackPackPngPath, datapackReadMePath, datapackLicensePath, datapackOverwriteOutput, datapackIncremental, datapackHardLinks, datapackMinifyJson, datapackPreprocessFunctions, datapackEntryFunctions, datapackValidateReferences, datapackCompressionPolicy, resourcePackName, resourcePackDescription, assetFolderPath, resourcePackBuildZipped, resourcePackPackPngPath, resourcePackReadMePath, resourcePackLicensePath, resourcePackOverwriteOutput, resourcePackIncremental, resourcePackHardLinks, resourcePackMinifyJson, resourcePackOptimizePng, resourcePackPruneUnused, resourcePackPruneRoots, resourcePackPruneReportPath, resourcePackDeduplicate, resourcePackMaxPackSize, resourcePackCompressionPolicy);
     }
 
-    ProgramConfigs(Version targetVersion, Version buildVersion, Path outputPath, Path generalPackPngPath, Path generalReadMePath, Path generalLicensePath, String datapackName, String datapackDescription, Path dataFolderPath, boolean datapackBuildZipped, Path datapackPackPngPath, Path datapackReadMePath, Path datapackLicensePath, boolean datapackOverwriteOutput, String assetPackName, String assetPackDescription, Path assetFolderPath, boolean assetPackBuildZipped, Path assetPackPackPngPath, Path assetPackReadMePath, Path assetPackLicensePath, boolean assetPackOverwriteOutput) {
-        this.targetVersion = targetVersion;
+    ProgramConfigs(List<Version> targetVersions, List<Version> supportedVersions, Map<String, PackFormatIndex> packFormats, Version buildVersion, Path outputPath, Path generalPackPngPath, Path generalReadMePath, Path generalLicensePath, boolean streamZip, boolean reproducible, int compressionThreads, String compressionPolicy, double autoCompressionRatio, int maxCompressionIterations, long maxCompressionTime, Path metricsReportPath, int metricsSlowestFiles, boolean jfrEvents, Path cachePath, long cacheSizeLimit, boolean cacheZipEntries, long memoryMapThreshold, String datapackName, String datapackDescription, Path dataFolderPath, boolean datapackBuildZipped, Path datapackPackPngPath, Path datapackReadMePath, Path datapackLicensePath, boolean datapackOverwriteOutput, boolean datapackIncremental, boolean datapackHardLinks, boolean datapackMinifyJson, boolean datapackPreprocessFunctions, List<String> datapackEntryFunctions, boolean datapackValidateReferences, String datapackCompressionPolicy, String assetPackName, String assetPackDescription, Path assetFolderPath, boolean assetPackBuildZipped, Path assetPackPackPngPath, Path assetPackReadMePath, Path assetPackLicensePath, boolean assetPackOverwriteOutput, boolean assetPackIncremental, boolean assetPackHardLinks, boolean assetPackMinifyJson, boolean assetPackOptimizePng, boolean assetPackPruneUnused, List<String> assetPackPruneRoots, Path assetPackPruneReportPath, boolean assetPackDeduplicate, long assetPackMaxPackSize, String assetPackCompressionPolicy) {
+        this.targetVersions = targetVersions;
+        this.supportedVersions = supportedVersions;
+        this.packFormats = packFormats;
         this.buildVersion = buildVersion;
         this.outputPath = outputPath;
         this.generalPackPngPath = generalPackPngPath;
         this.generalReadMePath = generalReadMePath;
         this.generalLicensePath = generalLicensePath;
+        this.streamZip = streamZip;
+        this.reproducible = reproducible;
+        this.compressionThreads = compressionThreads;
+        this.compressionPolicy = compressionPolicy;
+        this.autoCompressionRatio = autoCompressionRatio;
+        this.maxCompressionIterations = maxCompressionIterations;
+        this.maxCompressionTime = maxCompressionTime;
+        this.metricsReportPath = metricsReportPath;
+        this.metricsSlowestFiles = metricsSlowestFiles;
+        this.jfrEvents = jfrEvents;
+        this.cachePath = cachePath;
+        this.cacheSizeLimit = cacheSizeLimit;
+        this.cacheZipEntries = cacheZipEntries;
+        this.memoryMapThreshold = memoryMapThreshold;
         this.datapackName = datapackName;
         this.datapackDescription = datapackDescription;
         this.dataFolderPath = dataFolderPath;
@@ -270,6 +672,13 @@ public class ProgramConfigs {
         this.datapackReadMePath = datapackReadMePath;
         this.datapackLicensePath = datapackLicensePath;
         this.datapackOverwriteOutput = datapackOverwriteOutput;
+        this.datapackIncremental = datapackIncremental;
+        this.datapackHardLinks = datapackHardLinks;
+        this.datapackMinifyJson = datapackMinifyJson;
+        this.datapackPreprocessFunctions = datapackPreprocessFunctions;
+        this.datapackEntryFunctions = datapackEntryFunctions;
+        this.datapackValidateReferences = datapackValidateReferences;
+        this.datapackCompressionPolicy = datapackCompressionPolicy;
         this.assetPackName = assetPackName;
         this.assetPackDescription = assetPackDescription;
         this.assetFolderPath = assetFolderPath;
@@ -278,5 +687,15 @@ public class ProgramConfigs {
         this.assetPackReadMePath = assetPackReadMePath;
         this.assetPackLicensePath = assetPackLicensePath;
         this.assetPackOverwriteOutput = assetPackOverwriteOutput;
+        this.assetPackIncremental = assetPackIncremental;
+        this.assetPackHardLinks = assetPackHardLinks;
+        this.assetPackMinifyJson = assetPackMinifyJson;
+        this.assetPackOptimizePng = assetPackOptimizePng;
+        this.assetPackPruneUnused = assetPackPruneUnused;
+        this.assetPackPruneRoots = assetPackPruneRoots;
+        this.assetPackPruneReportPath = assetPackPruneReportPath;
+        this.assetPackDeduplicate = assetPackDeduplicate;
+        this.assetPackMaxPackSize = assetPackMaxPackSize;
+        this.assetPackCompressionPolicy = assetPackCompressionPolicy;
     }
 }
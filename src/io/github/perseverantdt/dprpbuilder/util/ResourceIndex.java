@@ -0,0 +1,315 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Indexes the ID of every resource in a datapack by its registry, like "function" or "tags/item", so that the
+// references in functions, tags, advancements, predicates and loot tables can be checked with a lookup each. Only
+// references to namespaces of the pack itself are checked, other than minecraft, since anything else may come from the
+// game or from another pack.
+public class ResourceIndex {
+    static final int MAX_REPORTED = 50;
+    // Minecraft 1.21 renamed these folders to the singular. Both are indexed under the new name, so that packs of either
+    // layout are checked the same way.
+    static final Map<String, String> LEGACY_FOLDERS = Map.ofEntries(
+        Map.entry("functions", "function"),
+        Map.entry("advancements", "advancement"),
+        Map.entry("predicates", "predicate"),
+        Map.entry("loot_tables", "loot_table"),
+        Map.entry("item_modifiers", "item_modifier"),
+        Map.entry("recipes", "recipe"),
+        Map.entry("structures", "structure"),
+        Map.entry("tags/functions", "tags/function"),
+        Map.entry("tags/blocks", "tags/block"),
+        Map.entry("tags/items", "tags/item"),
+        Map.entry("tags/entity_types", "tags/entity_type"),
+        Map.entry("tags/fluids", "tags/fluid"),
+        Map.entry("tags/game_events", "tags/game_event")
+    );
+
+    HashMap<String, HashSet<String>> ids = new HashMap<>();
+    HashSet<String> namespaces = new HashSet<>();
+
+    public boolean contains(String registry, String id) {
+        HashSet<String> folderIds = ids.get(registry);
+        return folderIds != null && folderIds.contains(id);
+    }
+    public int size() {
+        int size = 0;
+        for (HashSet<String> folderIds : ids.values()) {
+            size += folderIds.size();
+        }
+        return size;
+    }
+    // Reads every function and JSON file of the pack on the pool and fails the build with every reference to a
+    // resource that does not exist.
+    public void validate(List<PackEntry> entries, ForkJoinPool pool, BuildMetrics metrics) throws IOException {
+        ArrayList<ForkJoinTask<List<String>>> tasks = new ArrayList<>();
+        for (PackEntry entry : entries) {
+            if (getRegistry(entry.getName()) != null) tasks.add(pool.submit(() -> findMissing(entry, metrics)));
+        }
+
+        ArrayList<String> missing = new ArrayList<>();
+        try {
+            for (ForkJoinTask<List<String>> task : tasks) {
+                missing.addAll(ParallelZipWriter.join(task));
+            }
+        }
+        finally {
+            for (ForkJoinTask<List<String>> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        StringBuilder message = new StringBuilder(String.format("Found %1$d references to resources that do not exist:", missing.size()));
+        for (String reference : missing.subList(0, Math.min(MAX_REPORTED, missing.size()))) {
+            message.append("\n  ").append(reference);
+        }
+        if (missing.size() > MAX_REPORTED) message.append(String.format("\n  ...and %1$d more.", missing.size() - MAX_REPORTED));
+        throw new IOException(message.toString());
+    }
+
+    List<String> findMissing(PackEntry entry, BuildMetrics metrics) throws IOException {
+        BuildMetrics.Span span = metrics.begin(BuildMetrics.Phase.VALIDATE);
+        ArrayList<String> missing = new ArrayList<>();
+        String name = entry.getName();
+        String folder = getRegistry(name);
+        if (name.endsWith(".mcfunction")) {
+            String text = new String(entry.isInMemory() ? entry.getContent() : Files.readAllBytes(entry.getSource()), StandardCharsets.UTF_8);
+            int lineNumber = 1;
+            for (int lineStart = text.startsWith("\uFEFF") ? 1 : 0; lineStart < text.length(); lineNumber++) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd < 0) lineEnd = text.length();
+                checkCommand(missing, name, lineNumber, text, lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+            }
+        }
+        else if (name.endsWith(".json")) {
+            JsonElement json;
+            try (BufferedReader reader = newReader(entry)) {
+                json = JsonParser.parseReader(reader);
+            }
+            catch (JsonParseException e) {
+                throw new IOException(String.format("Invalid JSON in %1$s: %2$s", name, e.getMessage()), e);
+            }
+
+            if (folder.startsWith("tags/")) {
+                checkTag(missing, name, folder, json);
+            }
+            else {
+                if (folder.equals("advancement") && json.isJsonObject()) checkAdvancement(missing, name, json.getAsJsonObject());
+                checkConditions(missing, name, json);
+            }
+        }
+        span.end(name, entry.getSize(), 0);
+        return missing;
+    }
+    // Reads the command a word at a time instead of matching patterns against it, since a large datapack has hundreds of
+    // thousands of commands. The word after "function", "if predicate", "loot" or "advancement grant <targets> only" and
+    // the like is a reference.
+    void checkCommand(List<String> missing, String name, int lineNumber, String text, int start, int end) {
+        String expected = null;
+        int word = 0;
+        int advancementWord = -1;
+        int previousStart = 0;
+        int previousEnd = 0;
+        int i = start;
+        while (i < end) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            if (word == 0 && text.charAt(i) == '#') return;
+
+            int wordStart = i;
+            while (i < end && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (expected != null && isResourceId(text, wordStart, i)) {
+                String id = text.substring(wordStart, i);
+                if (id.startsWith("#")) check(missing, name, lineNumber, expected.equals("function") ? "tags/function" : expected, id.substring(1));
+                else check(missing, name, lineNumber, expected, id);
+            }
+
+            expected = null;
+            if (isWord(text, wordStart, i, "function")) {
+                expected = "function";
+            }
+            else if (isWord(text, wordStart, i, "predicate") && (isWord(text, previousStart, previousEnd, "if") || isWord(text, previousStart, previousEnd, "unless"))) {
+                expected = "predicate";
+            }
+            else if (isWord(text, wordStart, i, "loot")) {
+                expected = "loot_table";
+            }
+            else if (isWord(text, wordStart, i, "advancement")) {
+                advancementWord = word;
+            }
+            else if (advancementWord >= 0 && word == advancementWord + 3 && (isWord(text, wordStart, i, "only") || isWord(text, wordStart, i, "from") || isWord(text, wordStart, i, "until") || isWord(text, wordStart, i, "through"))) {
+                expected = "advancement";
+            }
+            previousStart = wordStart;
+            previousEnd = i;
+            word++;
+        }
+    }
+    void checkTag(List<String> missing, String source, String folder, JsonElement tag) {
+        JsonElement values = tag.isJsonObject() ? tag.getAsJsonObject().get("values") : null;
+        if (values == null || !values.isJsonArray()) return;
+        for (JsonElement value : (JsonArray) values) {
+            if (value.isJsonObject()) {
+                // Optional values may be missing.
+                JsonElement required = value.getAsJsonObject().get("required");
+                if (required != null && required.isJsonPrimitive() && !required.getAsBoolean()) continue;
+                value = value.getAsJsonObject().get("id");
+            }
+            if (value == null || !value.isJsonPrimitive()) continue;
+
+            // Only tags and functions come from packs. Blocks, items and the like are always from the game.
+            String id = value.getAsString();
+            if (id.startsWith("#")) check(missing, source, 0, folder, id.substring(1));
+            else if (folder.equals("tags/function")) check(missing, source, 0, "function", id);
+        }
+    }
+    void checkAdvancement(List<String> missing, String source, JsonObject advancement) {
+        checkString(missing, source, "advancement", advancement.get("parent"));
+        JsonElement rewards = advancement.get("rewards");
+        if (rewards == null || !rewards.isJsonObject()) return;
+        checkString(missing, source, "function", rewards.getAsJsonObject().get("function"));
+        JsonElement loot = rewards.getAsJsonObject().get("loot");
+        if (loot != null && loot.isJsonArray()) {
+            for (JsonElement lootTable : (JsonArray) loot) {
+                checkString(missing, source, "loot_table", lootTable);
+            }
+        }
+    }
+    // Looks for predicates referenced by conditions, and for loot tables referenced by loot table entries and the
+    // set_loot_table function, anywhere in the file.
+    void checkConditions(List<String> missing, String source, JsonElement json) {
+        if (json.isJsonArray()) {
+            for (JsonElement element : (JsonArray) json) {
+                checkConditions(missing, source, element);
+            }
+        }
+        if (!json.isJsonObject()) return;
+
+        JsonObject object = json.getAsJsonObject();
+        if (isType(object.get("condition"), "reference")) checkString(missing, source, "predicate", object.get("name"));
+        if (isType(object.get("type"), "loot_table") || isType(object.get("function"), "set_loot_table")) checkString(missing, source, "loot_table", object.get("name"));
+        for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+            checkConditions(missing, source, member.getValue());
+        }
+    }
+    void checkString(List<String> missing, String source, String folder, JsonElement id) {
+        if (id != null && id.isJsonPrimitive()) check(missing, source, 0, folder, id.getAsString());
+    }
+    // Line 0 stands for the whole file. Most references exist, so they are looked up before anything else is done.
+    void check(List<String> missing, String source, int line, String folder, String id) {
+        id = normalize(id);
+        if (contains(folder, id)) return;
+        String namespace = id.substring(0, id.indexOf(':'));
+        if (namespace.equals("minecraft") || !namespaces.contains(namespace)) return;
+        missing.add(String.format("%1$s: %2$s does not exist.", line > 0 ? source + ":" + line : source, describe(folder, id)));
+    }
+
+    public static ResourceIndex build(List<PackEntry> entries) {
+        ResourceIndex index = new ResourceIndex();
+        for (PackEntry entry : entries) {
+            String registry = getRegistry(entry.getName());
+            String id = registry != null ? getId(entry.getName()) : null;
+            if (id == null) continue;
+            index.ids.computeIfAbsent(registry, f -> new HashSet<>()).add(id);
+            index.namespaces.add(id.substring(0, id.indexOf(':')));
+        }
+        return index;
+    }
+    // Adds the minecraft namespace to IDs without one, like the game does. Tags keep their #.
+    public static String normalize(String id) {
+        boolean tag = id.startsWith("#");
+        String name = tag ? id.substring(1) : id;
+        if (name.indexOf(':') < 0) name = "minecraft:" + name;
+        return tag ? "#" + name : name;
+    }
+    // Returns the folder of a resource in a file like data/namespace/folder/path.json, which includes the registry of
+    // tags, like "tags/functions". Returns null for files that are not resources.
+    public static String getFolder(String name) {
+        if (!name.startsWith("data/")) return null;
+        int namespaceEnd = name.indexOf('/', "data/".length());
+        int folderEnd = namespaceEnd < 0 ? -1 : name.indexOf('/', namespaceEnd + 1);
+        if (folderEnd >= 0 && name.startsWith("tags/", namespaceEnd + 1)) folderEnd = name.indexOf('/', folderEnd + 1);
+        return folderEnd < 0 ? null : name.substring(namespaceEnd + 1, folderEnd);
+    }
+    // Returns the registry of a resource, which is its folder with the name it has since Minecraft 1.21, like "function"
+    // for both data/namespace/function and data/namespace/functions. Returns null for files that are not resources.
+    public static String getRegistry(String name) {
+        String folder = getFolder(name);
+        return folder != null ? LEGACY_FOLDERS.getOrDefault(folder, folder) : null;
+    }
+    // Returns the ID of the resource in a file like data/namespace/folder/path.json, like namespace:path.
+    public static String getId(String name) {
+        String folder = getFolder(name);
+        int extension = name.lastIndexOf('.');
+        if (folder == null || extension < 0) return null;
+        int namespaceEnd = name.indexOf('/', "data/".length());
+        int pathStart = namespaceEnd + 1 + folder.length() + 1;
+        if (extension <= pathStart) return null;
+        return name.substring("data/".length(), namespaceEnd) + ":" + name.substring(pathStart, extension);
+    }
+
+    static boolean isWord(String text, int start, int end, String word) {
+        return end - start == word.length() && text.startsWith(word, start);
+    }
+    // Words that are not IDs, like the targets after "loot give", are skipped.
+    static boolean isResourceId(String text, int start, int end) {
+        for (int i = text.charAt(start) == '#' ? start + 1 : start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-' || c == '/' || c == ':')) return false;
+        }
+        return end > start;
+    }
+    static boolean isType(JsonElement type, String expected) {
+        return type != null && type.isJsonPrimitive() && normalize(type.getAsString()).equals("minecraft:" + expected);
+    }
+    static String describe(String folder, String id) {
+        switch (folder) {
+            case "function":
+                return "Function " + id;
+            case "tags/function":
+                return "Function tag #" + id;
+            case "predicate":
+                return "Predicate " + id;
+            case "loot_table":
+                return "Loot table " + id;
+            case "advancement":
+                return "Advancement " + id;
+            default:
+                return "Tag #" + id + " in " + folder;
+        }
+    }
+    static BufferedReader newReader(PackEntry entry) throws IOException {
+        BufferedReader reader = entry.isInMemory() ? new BufferedReader(new InputStreamReader(new ByteArrayInputStream(entry.getContent()), StandardCharsets.UTF_8)) : Files.newBufferedReader(entry.getSource(), StandardCharsets.UTF_8);
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') reader.reset();
+        return reader;
+    }
+
+    ResourceIndex() {
+    }
+}
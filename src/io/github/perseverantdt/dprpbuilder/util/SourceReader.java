@@ -0,0 +1,79 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Reads the source files of a pack for compression. Files of at least mapThreshold bytes are memory-mapped, so that
+// their content goes from the page cache to the Deflater or the archive without being copied onto the heap first.
+// Smaller files are read into a direct buffer that every thread reuses, since mapping a file costs more than reading
+// a few kilobytes of it.
+public class SourceReader {
+    // Every read of a chunk and its dictionary fits.
+    static final int POOLED_BUFFER_SIZE = ParallelZipWriter.CHUNK_SIZE + ParallelZipWriter.DICTIONARY_SIZE;
+    // Files larger than this are mapped and written to the archive one region at a time.
+    static final long MAX_REGION_SIZE = 1 << 30;
+
+    long mapThreshold;
+    ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(POOLED_BUFFER_SIZE));
+
+    public long getMapThreshold() {
+        return mapThreshold;
+    }
+    public boolean isMapped(PackEntry entry) {
+        return mapThreshold > 0 && !entry.isInMemory() && entry.getSize() >= mapThreshold;
+    }
+    // Returns the bytes of the entry from position to position + length. A buffer from the pool is only valid until
+    // the same thread reads again, so whatever has to outlive that goes through retain().
+    public ByteBuffer read(PackEntry entry, long position, int length) throws IOException {
+        if (entry.isInMemory()) return ByteBuffer.wrap(entry.getContent(), (int) position, length).slice();
+
+        try (FileChannel channel = FileChannel.open(entry.getSource(), StandardOpenOption.READ)) {
+            if (isMapped(entry)) {
+                // Mapping past the end of a file that shrank would crash the build when the missing bytes are read.
+                if (position + length > channel.size()) throw new IOException("File changed while the pack was being built: " + entry.getSource());
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+
+            ByteBuffer buffer = length <= POOLED_BUFFER_SIZE ? buffers.get().clear().limit(length) : ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("File changed while the pack was being built: " + entry.getSource());
+                }
+            }
+            return buffer.flip();
+        }
+    }
+    // Writes the whole entry to the archive as it is.
+    public void transferTo(PackEntry entry, ZipArchiveWriter zip) throws IOException {
+        if (entry.isInMemory()) {
+            zip.write(entry.getContent(), 0, entry.getContent().length);
+            return;
+        }
+
+        try (FileChannel source = FileChannel.open(entry.getSource(), StandardOpenOption.READ)) {
+            if (!isMapped(entry)) {
+                zip.transferFrom(source, 0, entry.getSize());
+                return;
+            }
+            if (source.size() < entry.getSize()) throw new IOException("File changed while the pack was being built: " + entry.getSource());
+            for (long position = 0; position < entry.getSize(); position += MAX_REGION_SIZE) {
+                zip.write(source.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_REGION_SIZE, entry.getSize() - position)));
+            }
+        }
+    }
+    // Copies the buffer of this thread's last read onto the heap if it came from the pool. Mapped buffers and buffers
+    // on the heap stay valid as they are.
+    public ByteBuffer retain(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer != buffers.get()) return buffer;
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        return copy.flip();
+    }
+
+    // A threshold of 0 never maps files.
+    public SourceReader(long mapThreshold) {
+        this.mapThreshold = mapThreshold;
+    }
+}
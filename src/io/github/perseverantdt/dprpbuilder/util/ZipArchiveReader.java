@@ -0,0 +1,182 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+// Reads the central directory of an existing zip archive so that its entries can be copied into a new archive as they
+// are, without inflating and deflating them again.
+public class ZipArchiveReader implements Closeable {
+    FileChannel channel;
+    HashMap<String, Entry> entries = new HashMap<>();
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+    // Every entry in the order it is stored in.
+    public List<Entry> getEntries() {
+        ArrayList<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(entry -> entry.localHeaderOffset));
+        return sorted;
+    }
+    public void copyEntry(Entry entry, ZipArchiveWriter writer, long time) throws IOException {
+        ByteBuffer localHeader = readFully(entry.localHeaderOffset, 30);
+        if (localHeader.getInt(0) != ZipArchiveWriter.LOCAL_HEADER) throw new IOException("Invalid local header for " + entry.name);
+        long dataOffset = entry.localHeaderOffset + 30 + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+
+        writer.beginEntry(entry.name, entry.method, time, entry.crc, entry.compressedSize, entry.size);
+        writer.transferFrom(channel, dataOffset, entry.compressedSize);
+        writer.endEntry(entry.crc, entry.compressedSize, entry.size);
+    }
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static ZipArchiveReader open(Path zipPath) throws IOException {
+        ZipArchiveReader reader = new ZipArchiveReader(FileChannel.open(zipPath, StandardOpenOption.READ));
+        try {
+            reader.readCentralDirectory();
+            return reader;
+        }
+        catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+        ByteBuffer tail = readFully(size - tailLength, tailLength);
+        int endOffset = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == ZipArchiveWriter.END_OF_CENTRAL_DIRECTORY) {
+                endOffset = i;
+                break;
+            }
+        }
+        if (endOffset < 0) throw new IOException("Not a zip archive.");
+
+        long count = tail.getShort(endOffset + 10) & 0xFFFF;
+        long centralDirectorySize = tail.getInt(endOffset + 12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tail.getInt(endOffset + 16) & 0xFFFFFFFFL;
+        if (count == ZipArchiveWriter.ZIP64_MAGIC_COUNT || centralDirectorySize == ZipArchiveWriter.ZIP64_MAGIC || centralDirectoryOffset == ZipArchiveWriter.ZIP64_MAGIC) {
+            long locatorOffset = size - tailLength + endOffset - 20;
+            ByteBuffer locator = readFully(locatorOffset, 20);
+            if (locator.getInt(0) != ZipArchiveWriter.ZIP64_LOCATOR) throw new IOException("Missing ZIP64 end of central directory locator.");
+            ByteBuffer zip64End = readFully(locator.getLong(8), 56);
+            if (zip64End.getInt(0) != ZipArchiveWriter.ZIP64_END_OF_CENTRAL_DIRECTORY) throw new IOException("Invalid ZIP64 end of central directory record.");
+            count = zip64End.getLong(32);
+            centralDirectorySize = zip64End.getLong(40);
+            centralDirectoryOffset = zip64End.getLong(48);
+        }
+        if (centralDirectorySize > Integer.MAX_VALUE) throw new IOException("Central directory is too large.");
+
+        ByteBuffer centralDirectory = readFully(centralDirectoryOffset, (int) centralDirectorySize);
+        for (long i = 0; i < count; i++) {
+            int start = centralDirectory.position();
+            if (centralDirectory.getInt(start) != ZipArchiveWriter.CENTRAL_HEADER) throw new IOException("Invalid central directory header.");
+
+            int method = centralDirectory.getShort(start + 10) & 0xFFFF;
+            long dosTime = centralDirectory.getInt(start + 12) & 0xFFFFFFFFL;
+            long crc = centralDirectory.getInt(start + 16) & 0xFFFFFFFFL;
+            long compressedSize = centralDirectory.getInt(start + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = centralDirectory.getInt(start + 24) & 0xFFFFFFFFL;
+            int nameLength = centralDirectory.getShort(start + 28) & 0xFFFF;
+            int extraLength = centralDirectory.getShort(start + 30) & 0xFFFF;
+            int commentLength = centralDirectory.getShort(start + 32) & 0xFFFF;
+            long localHeaderOffset = centralDirectory.getInt(start + 42) & 0xFFFFFFFFL;
+
+            byte[] name = new byte[nameLength];
+            centralDirectory.position(start + 46);
+            centralDirectory.get(name);
+
+            int extraStart = start + 46 + nameLength;
+            for (int extra = extraStart; extra + 4 <= extraStart + extraLength; ) {
+                int id = centralDirectory.getShort(extra) & 0xFFFF;
+                int length = centralDirectory.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    if (uncompressedSize == ZipArchiveWriter.ZIP64_MAGIC) {
+                        uncompressedSize = centralDirectory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZipArchiveWriter.ZIP64_MAGIC) {
+                        compressedSize = centralDirectory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == ZipArchiveWriter.ZIP64_MAGIC) {
+                        localHeaderOffset = centralDirectory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            centralDirectory.position(extraStart + extraLength + commentLength);
+
+            String nameString = new String(name, StandardCharsets.UTF_8);
+            entries.put(nameString, new Entry(nameString, method, ZipArchiveWriter.fromDosTime(dosTime, ZoneId.systemDefault()), crc, compressedSize, uncompressedSize, localHeaderOffset));
+        }
+    }
+    ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Unexpected end of zip archive.");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static class Entry {
+        String name;
+        int method;
+        long time;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+
+        public String getName() {
+            return name;
+        }
+        public int getMethod() {
+            return method;
+        }
+        public long getTime() {
+            return time;
+        }
+        public long getCrc() {
+            return crc;
+        }
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+        public long getSize() {
+            return size;
+        }
+
+        Entry(String name, int method, long time, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    ZipArchiveReader(FileChannel channel) {
+        this.channel = channel;
+    }
+}
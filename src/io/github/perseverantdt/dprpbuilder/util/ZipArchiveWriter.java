@@ -0,0 +1,319 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.zip.ZipEntry;
+
+// Writes zip archives from data that has already been compressed, which ZipOutputStream cannot do. The SHA-1 of the
+// archive is computed while it is written, which is what servers need to verify a resource pack.
+public class ZipArchiveWriter implements Closeable {
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int DATA_DESCRIPTOR = 0x08074b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    static final int ZIP64_LOCATOR = 0x07064b50;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    static final int FLAG_UTF8 = 0x0800;
+    // 1980-01-01T00:00:00Z, the earliest time a zip file can store.
+    static final long DOS_EPOCH = 315532800000L;
+
+    WritableByteChannel channel;
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    long offset;
+    ArrayList<Record> records = new ArrayList<>();
+    Record current;
+    long currentDataStart;
+    boolean finished;
+    MessageDigest digest;
+    byte[] sha1;
+    long fixedTime = -1;
+    ZoneId zone = ZoneId.systemDefault();
+
+    public long getOffset() {
+        return offset;
+    }
+    // Only available once the archive is finished.
+    public byte[] getSha1() {
+        return sha1;
+    }
+    // Gives every entry the same time, in UTC, so that the archive does not depend on when or where it was built.
+    public void setFixedTime(long time) {
+        fixedTime = time;
+        zone = ZoneOffset.UTC;
+    }
+
+    public void beginEntry(String name, int method, long time, long crc, long compressedSize, long size) throws IOException {
+        checkSize(name, compressedSize);
+        checkSize(name, size);
+        startEntry(new Record(name, method, FLAG_UTF8, fixedTime >= 0 ? fixedTime : time, crc, compressedSize, size, offset));
+    }
+    public void beginEntry(String name, int method, long time) throws IOException {
+        startEntry(new Record(name, method, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, fixedTime >= 0 ? fixedTime : time, 0, 0, 0, offset));
+    }
+    public void write(byte[] data, int off, int len) throws IOException {
+        if (len > buffer.capacity()) {
+            flush();
+            write(ByteBuffer.wrap(data, off, len));
+        }
+        else {
+            ensure(len);
+            buffer.put(data, off, len);
+            offset += len;
+        }
+    }
+    public void write(ByteBuffer data) throws IOException {
+        if (data.remaining() <= buffer.remaining()) {
+            offset += data.remaining();
+            buffer.put(data);
+            return;
+        }
+
+        flush();
+        digest.update(data.duplicate());
+        while (data.hasRemaining()) {
+            offset += channel.write(data);
+        }
+    }
+    // Copies through the buffer instead of with FileChannel.transferTo, since every byte has to go through the digest.
+    public void transferFrom(FileChannel source, long position, long count) throws IOException {
+        flush();
+        long transferred = 0;
+        while (transferred < count) {
+            buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+            int read = source.read(buffer, position + transferred);
+            if (read < 0) throw new IOException("Source file shrank while it was being written to the archive.");
+            transferred += read;
+            flush();
+        }
+        offset += count;
+    }
+    public void endEntry(long crc, long compressedSize, long size) throws IOException {
+        if (current == null) throw new IllegalStateException("No entry is currently open.");
+        long written = offset - currentDataStart;
+        if (written != compressedSize) {
+            throw new IOException(String.format("Wrote %1$d bytes for %2$s but expected %3$d.", written, current.nameString(), compressedSize));
+        }
+
+        if ((current.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            checkSize(current.nameString(), compressedSize);
+            checkSize(current.nameString(), size);
+            current.crc = crc;
+            current.compressedSize = compressedSize;
+            current.size = size;
+
+            ensure(16);
+            buffer.putInt(DATA_DESCRIPTOR);
+            buffer.putInt((int) crc);
+            buffer.putInt((int) compressedSize);
+            buffer.putInt((int) size);
+            offset += 16;
+        }
+        else if (current.crc != crc || current.size != size) {
+            throw new IOException("Entry data does not match its header: " + current.nameString());
+        }
+
+        records.add(current);
+        current = null;
+    }
+    public void finish() throws IOException {
+        if (finished) return;
+        if (current != null) throw new IllegalStateException("An entry is still open: " + current.nameString());
+        finished = true;
+
+        long centralDirectoryOffset = offset;
+        for (Record record : records) {
+            boolean zip64 = record.offset >= ZIP64_MAGIC;
+            ensure(46 + record.name.length + (zip64 ? 12 : 0));
+            buffer.putInt(CENTRAL_HEADER);
+            buffer.putShort((short) (zip64 ? 45 : 20));
+            buffer.putShort((short) (zip64 ? 45 : record.versionNeeded()));
+            buffer.putShort((short) record.flags);
+            buffer.putShort((short) record.method);
+            buffer.putInt((int) toDosTime(record.time, zone));
+            buffer.putInt((int) record.crc);
+            buffer.putInt((int) record.compressedSize);
+            buffer.putInt((int) record.size);
+            buffer.putShort((short) record.name.length);
+            buffer.putShort((short) (zip64 ? 12 : 0));
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt((int) (zip64 ? ZIP64_MAGIC : record.offset));
+            buffer.put(record.name);
+            if (zip64) {
+                buffer.putShort((short) 0x0001);
+                buffer.putShort((short) 8);
+                buffer.putLong(record.offset);
+            }
+            offset += 46 + record.name.length + (zip64 ? 12 : 0);
+        }
+        long centralDirectorySize = offset - centralDirectoryOffset;
+
+        boolean zip64 = records.size() >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = offset;
+            ensure(56 + 20);
+            buffer.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+            buffer.putLong(44);
+            buffer.putShort((short) 45);
+            buffer.putShort((short) 45);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(records.size());
+            buffer.putLong(records.size());
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+            buffer.putInt(ZIP64_LOCATOR);
+            buffer.putInt(0);
+            buffer.putLong(zip64EndOffset);
+            buffer.putInt(1);
+            offset += 56 + 20;
+        }
+
+        ensure(22);
+        buffer.putInt(END_OF_CENTRAL_DIRECTORY);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : records.size()));
+        buffer.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : records.size()));
+        buffer.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectorySize));
+        buffer.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectoryOffset));
+        buffer.putShort((short) 0);
+        offset += 22;
+        flush();
+        sha1 = digest.digest();
+    }
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    void startEntry(Record record) throws IOException {
+        if (current != null) throw new IllegalStateException("An entry is still open: " + current.nameString());
+        ensure(30 + record.name.length);
+        buffer.putInt(LOCAL_HEADER);
+        buffer.putShort((short) record.versionNeeded());
+        buffer.putShort((short) record.flags);
+        buffer.putShort((short) record.method);
+        buffer.putInt((int) toDosTime(record.time, zone));
+        buffer.putInt((int) record.crc);
+        buffer.putInt((int) record.compressedSize);
+        buffer.putInt((int) record.size);
+        buffer.putShort((short) record.name.length);
+        buffer.putShort((short) 0);
+        buffer.put(record.name);
+        offset += 30 + record.name.length;
+
+        current = record;
+        currentDataStart = offset;
+    }
+    void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) flush();
+    }
+    void flush() throws IOException {
+        buffer.flip();
+        digest.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static void checkSize(String name, long size) throws IOException {
+        if (size >= ZIP64_MAGIC) throw new IOException("Entries of 4 GB or larger are not supported: " + name);
+    }
+    // SOURCE_DATE_EPOCH is the usual way to pin the timestamps of reproducible builds. Without it, the earliest time a zip
+    // file can store is used.
+    public static long getReproducibleTime() {
+        String sourceDateEpoch = System.getenv("SOURCE_DATE_EPOCH");
+        if (sourceDateEpoch != null && !sourceDateEpoch.isBlank()) {
+            try {
+                return Math.max(DOS_EPOCH, Long.parseLong(sourceDateEpoch.trim()) * 1000);
+            }
+            catch (NumberFormatException e) {
+                System.out.printf("Ignoring SOURCE_DATE_EPOCH, which is not a number of seconds: %1$s\n", sourceDateEpoch);
+            }
+        }
+        return DOS_EPOCH;
+    }
+    static long toDosTime(long time, ZoneId zone) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone);
+        int year = dateTime.getYear();
+        if (year < 1980) return (1 << 21) | (1 << 16);
+        if (year > 2107) year = 2107;
+
+        return ((long) (year - 1980) << 25 | (long) dateTime.getMonthValue() << 21 | (long) dateTime.getDayOfMonth() << 16 | (long) dateTime.getHour() << 11 | (long) dateTime.getMinute() << 5 | (long) dateTime.getSecond() >> 1) & 0xFFFFFFFFL;
+    }
+    // Times that are not valid dates, which other tools may write, are read as the earliest time a zip file can store.
+    static long fromDosTime(long dosTime, ZoneId zone) {
+        try {
+            LocalDateTime dateTime = LocalDateTime.of((int) (dosTime >> 25 & 0x7F) + 1980, (int) (dosTime >> 21 & 0x0F), (int) (dosTime >> 16 & 0x1F), (int) (dosTime >> 11 & 0x1F), (int) (dosTime >> 5 & 0x3F), (int) (dosTime << 1 & 0x3E));
+            return dateTime.atZone(zone).toInstant().toEpochMilli();
+        }
+        catch (DateTimeException e) {
+            return DOS_EPOCH;
+        }
+    }
+
+    static class Record {
+        byte[] name;
+        int method;
+        int flags;
+        long time;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+
+        int versionNeeded() {
+            return (method == ZipEntry.DEFLATED || (flags & FLAG_DATA_DESCRIPTOR) != 0) ? 20 : 10;
+        }
+        String nameString() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        Record(String name, int method, int flags, long time, long crc, long compressedSize, long size, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.flags = flags;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    public ZipArchiveWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java runtime has to support SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+}
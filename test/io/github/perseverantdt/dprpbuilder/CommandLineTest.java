@@ -0,0 +1,54 @@
+package io.github.perseverantdt.dprpbuilder;
+
+import io.github.perseverantdt.dprpbuilder.util.ProgramConfigs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandLineTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void rejectsUnknownKeys() {
+        assertEquals(CommandLine.EXIT_USAGE, CommandLine.run(new String[] {"--headless", "--outptuPath=x"}));
+        assertEquals(CommandLine.EXIT_USAGE, CommandLine.run(new String[] {"--headless", "--Datapack.incremntal=yes"}));
+        assertEquals(CommandLine.EXIT_USAGE, CommandLine.run(new String[] {"--headless", "--datapack.Incremental=yes"}));
+        assertEquals(CommandLine.EXIT_USAGE, CommandLine.run(new String[] {"--headless", "--Assets.name=x"}));
+    }
+    @Test
+    void readsConfigWithEquals() {
+        // The file is read, so a missing one is a config error rather than an override of General.config.
+        assertEquals(CommandLine.EXIT_CONFIG, CommandLine.run(new String[] {"--headless", "--config=" + folder.resolve("missing.ini")}));
+        assertEquals(CommandLine.EXIT_USAGE, CommandLine.run(new String[] {"--headless", "--config="}));
+    }
+    @Test
+    void knowsEveryKeyOfTheDefaultConfigs() throws IOException {
+        String section = "";
+        String text;
+        try (InputStream defaultConfigs = Main.class.getResourceAsStream("/dprpbuilder.ini")) {
+            text = new String(defaultConfigs.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int keys = 0;
+        for (String line : text.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                section = trimmed.substring(1, trimmed.length() - 1);
+            }
+            else if (!trimmed.startsWith(";") && !trimmed.startsWith("#") && trimmed.contains("=")) {
+                String key = trimmed.substring(0, trimmed.indexOf('=')).trim();
+                assertTrue(ProgramConfigs.isKey(section, key), section + "." + key);
+                keys++;
+            }
+        }
+        // And every key that is read is documented there.
+        assertEquals(55, keys);
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildManifestTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void roundTrips() throws IOException {
+        BuildManifest manifest = new BuildManifest("level:default");
+        manifest.put("data/ns/function/a.mcfunction", new BuildManifest.Record(12, 1_700_000_000_000L, 0xFFFFFFFFL));
+        manifest.put("pack.mcmeta", new BuildManifest.Record(0, 0, BuildManifest.UNKNOWN_HASH));
+        Path manifestPath = folder.resolve(BuildManifest.FILE_NAME);
+        manifest.save(manifestPath);
+
+        BuildManifest loaded = BuildManifest.load(manifestPath, "level:default");
+        assertNotNull(loaded);
+        assertEquals("level:default", loaded.getSettings());
+        assertEquals(Set.of("data/ns/function/a.mcfunction", "pack.mcmeta"), loaded.getNames());
+        BuildManifest.Record record = loaded.get("data/ns/function/a.mcfunction");
+        assertEquals(12, record.getSize());
+        assertEquals(1_700_000_000_000L, record.getLastModified());
+        assertEquals(0xFFFFFFFFL, record.getHash());
+        assertEquals(BuildManifest.UNKNOWN_HASH, loaded.get("pack.mcmeta").getHash());
+    }
+    @Test
+    void ignoresManifestsOfOtherSettingsOrUnreadable() throws IOException {
+        Path manifestPath = folder.resolve(BuildManifest.FILE_NAME);
+        assertNull(BuildManifest.load(manifestPath, "level:default"));
+
+        new BuildManifest("level:default").save(manifestPath);
+        assertNull(BuildManifest.load(manifestPath, "level:9"));
+
+        Files.writeString(manifestPath, "{\"format\":1,\"settings\":\"level:default\",\"records\":{\"a\":[1,");
+        assertNull(BuildManifest.load(manifestPath, "level:default"));
+        Files.writeString(manifestPath, "{\"format\":0,\"settings\":\"level:default\",\"records\":{}}");
+        assertNull(BuildManifest.load(manifestPath, "level:default"));
+    }
+    @Test
+    void checksSizeAndModificationTime() throws IOException {
+        Path source = Files.writeString(folder.resolve("a.mcfunction"), "say a");
+        PackEntry entry = PackEntry.ofFile("data/ns/function/a.mcfunction", source);
+        BuildManifest manifest = new BuildManifest("");
+        assertFalse(manifest.isUnchanged(entry));
+
+        manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified(), BuildManifest.hash(entry)));
+        assertTrue(manifest.isUnchanged(entry));
+        manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize() + 1, entry.getLastModified(), BuildManifest.hash(entry)));
+        assertFalse(manifest.isUnchanged(entry));
+        manifest.put(entry.getName(), new BuildManifest.Record(entry.getSize(), entry.getLastModified() - 1000, BuildManifest.hash(entry)));
+        assertFalse(manifest.isUnchanged(entry));
+
+        // Generated content has no modification time to go by.
+        PackEntry generated = PackEntry.ofBytes(entry.getName(), "say a".getBytes(StandardCharsets.UTF_8));
+        manifest.put(entry.getName(), new BuildManifest.Record(generated.getSize(), generated.getLastModified(), BuildManifest.hash(generated)));
+        assertFalse(manifest.isUnchanged(generated));
+    }
+    @Test
+    void hashesContentWithCrc32() throws IOException {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Path source = Files.write(folder.resolve("model.json"), content);
+
+        // The same as the CRC a zip archive stores for the entry, for files and generated content alike.
+        assertEquals(crc.getValue(), BuildManifest.hash(PackEntry.ofFile("assets/ns/models/model.json", source)));
+        assertEquals(crc.getValue(), BuildManifest.hash(PackEntry.ofBytes("assets/ns/models/model.json", content)));
+        content[0]++;
+        assertNotEquals(crc.getValue(), BuildManifest.hash(PackEntry.ofBytes("assets/ns/models/model.json", content)));
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExhaustiveDeflaterTest {
+    static final int ITERATIONS = 4;
+
+    @Test
+    void roundTripsEmptyInput() throws DataFormatException {
+        assertRoundTrip(new byte[0]);
+    }
+    @Test
+    void roundTripsRepeatedByte() throws DataFormatException {
+        byte[] input = new byte[100_000];
+        Arrays.fill(input, (byte) 'a');
+        byte[] output = assertRoundTrip(input);
+        assertTrue(output.length < 1000, "Compressed to " + output.length + " bytes");
+    }
+    @Test
+    void roundTripsSingleByte() throws DataFormatException {
+        assertRoundTrip(new byte[] {42});
+    }
+    @Test
+    void roundTripsIncompressibleData() throws DataFormatException {
+        // Larger than a stored block can be.
+        byte[] input = new byte[150_000];
+        new Random(1).nextBytes(input);
+        byte[] output = assertRoundTrip(input);
+        assertTrue(output.length < input.length + 100, "Compressed to " + output.length + " bytes");
+    }
+    @Test
+    void roundTripsTextOver64Kilobytes() throws DataFormatException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(2);
+        while (text.length() < 200_000) {
+            text.append("execute as @a[tag=player_").append(random.nextInt(500)).append("] run function ns:tick/").append(random.nextInt(50)).append('\n');
+        }
+        byte[] input = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] output = assertRoundTrip(input);
+        assertTrue(output.length < input.length / 3, "Compressed to " + output.length + " bytes");
+    }
+    @Test
+    void roundTripsSkewedSymbolsAtTheCodeLengthLimit() throws DataFormatException {
+        // Fibonacci counts give an unlimited Huffman code as deep as there are symbols, so 25 symbols need the 15 bit
+        // limit. The bytes are shuffled so that few of them are replaced by matches.
+        int[] counts = getFibonacciCounts(25);
+        assertTrue(getMaxLength(ExhaustiveDeflater.getCodeLengths(counts, counts.length)) > 15);
+
+        int size = 0;
+        for (int count : counts) {
+            size += count;
+        }
+        byte[] input = new byte[size];
+        int position = 0;
+        for (int symbol = 0; symbol < counts.length; symbol++) {
+            for (int i = 0; i < counts[symbol]; i++) {
+                input[position++] = (byte) ('A' + symbol);
+            }
+        }
+        Random random = new Random(3);
+        for (int i = input.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte swapped = input[i];
+            input[i] = input[j];
+            input[j] = swapped;
+        }
+        assertRoundTrip(input);
+    }
+    @Test
+    void limitsCodeLengthsToMaxBits() {
+        int[] lengths = ExhaustiveDeflater.getCodeLengths(getFibonacciCounts(30), 15);
+        assertEquals(15, getMaxLength(lengths));
+        // The code is complete: the Kraft sum of its lengths is exactly one.
+        long kraft = 0;
+        for (int length : lengths) {
+            if (length > 0) kraft += 1L << (15 - length);
+        }
+        assertEquals(1L << 15, kraft);
+    }
+    @Test
+    void roundTripsPartsDeflatedAfterDictionaries() throws DataFormatException {
+        // Parts that are not last end with an empty stored block, and the next part can match into the one before.
+        byte[] input = new byte[120_000];
+        Random random = new Random(4);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) ('a' + random.nextInt(4));
+        }
+        int split = 50_000;
+        byte[] first = ExhaustiveDeflater.deflate(ByteBuffer.wrap(input, 0, split), 0, false, ITERATIONS, Long.MAX_VALUE);
+        byte[] second = ExhaustiveDeflater.deflate(ByteBuffer.wrap(input), split, true, ITERATIONS, Long.MAX_VALUE);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        joined.writeBytes(first);
+        joined.writeBytes(second);
+        assertArrayEquals(input, inflate(joined.toByteArray()));
+    }
+    @Test
+    void returnsNullAfterTheDeadline() {
+        byte[] input = new byte[100_000];
+        new Random(5).nextBytes(input);
+        assertEquals(null, ExhaustiveDeflater.deflate(ByteBuffer.wrap(input), 0, true, ITERATIONS, System.nanoTime() - 1));
+    }
+
+    static byte[] assertRoundTrip(byte[] input) throws DataFormatException {
+        byte[] output = ExhaustiveDeflater.deflate(ByteBuffer.wrap(input), 0, true, ITERATIONS, Long.MAX_VALUE);
+        assertArrayEquals(input, inflate(output));
+        return output;
+    }
+    static byte[] inflate(byte[] deflated) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) throw new DataFormatException("The stream ends before its last block.");
+                inflated.write(buffer, 0, length);
+            }
+            assertEquals(0, inflater.getRemaining(), "Bytes after the last block");
+            return inflated.toByteArray();
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    static int[] getFibonacciCounts(int symbols) {
+        int[] counts = new int[symbols];
+        for (int i = 0; i < symbols; i++) {
+            counts[i] = i < 2 ? 1 : counts[i - 1] + counts[i - 2];
+        }
+        return counts;
+    }
+    static int getMaxLength(int[] lengths) {
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+}
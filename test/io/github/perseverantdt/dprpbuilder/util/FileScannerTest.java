@@ -0,0 +1,42 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileScannerTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void findsFilesWithTheExtensions() throws IOException {
+        Files.createDirectories(folder.resolve("ns/function/sub"));
+        Files.writeString(folder.resolve("ns/function/a.mcfunction"), "say a");
+        Files.writeString(folder.resolve("ns/function/sub/b.mcfunction"), "say b");
+        Files.writeString(folder.resolve("ns/function/notes.txt"), "notes");
+
+        TreeSet<String> names = new TreeSet<>();
+        for (PackEntry entry : FileScanner.forExtensions("mcfunction").scan(folder, "data/")) {
+            names.add(entry.getName());
+        }
+        assertEquals(new TreeSet<>(List.of("data/ns/function/a.mcfunction", "data/ns/function/sub/b.mcfunction")), names);
+    }
+    @Test
+    void failsOnFilesThatCannotBeVisited() throws IOException {
+        // A link back to its own folder cannot be followed, like a file that cannot be read.
+        Files.createDirectories(folder.resolve("ns/function"));
+        Files.createSymbolicLink(folder.resolve("ns/function/loop"), folder.resolve("ns"));
+
+        FileSystemLoopException e = assertThrows(FileSystemLoopException.class, () -> FileScanner.forExtensions("mcfunction").scan(folder, "data/"));
+        assertEquals(folder.resolve("ns/function/loop").toString(), e.getFile());
+    }
+}
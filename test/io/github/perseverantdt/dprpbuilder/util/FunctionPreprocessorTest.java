@@ -0,0 +1,90 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FunctionPreprocessorTest {
+    @Test
+    void keepsFunctionsCalledFromClickEvents() throws IOException {
+        FunctionPreprocessor preprocessor = new FunctionPreprocessor(List.of(), new BuildMetrics("Test", 0, false));
+        List<PackEntry> processed = preprocessor.process(List.of(
+            entry("data/minecraft/tags/function/load.json", "{\"values\":[\"ns:load\"]}"),
+            entry("data/ns/function/load.mcfunction", "say loaded\ntellraw @a {\"text\":\"Menu\",\"clickEvent\":{\"action\":\"run_command\",\"value\":\"/function ns:menu\"}}"),
+            entry("data/ns/function/menu.mcfunction", "say menu\nsay again"),
+            entry("data/ns/function/unused.mcfunction", "say unused")
+        ), ForkJoinPool.commonPool());
+
+        assertEquals(Set.of("data/minecraft/tags/function/load.json", "data/ns/function/load.mcfunction", "data/ns/function/menu.mcfunction"), getNames(processed));
+        assertEquals(1, preprocessor.getRemovedFunctions());
+    }
+    @Test
+    void keepsFunctionsCalledByMacroLines() throws IOException {
+        FunctionPreprocessor preprocessor = new FunctionPreprocessor(List.of(), new BuildMetrics("Test", 0, false));
+        List<PackEntry> processed = preprocessor.process(List.of(
+            entry("data/minecraft/tags/function/tick.json", "{\"values\":[\"ns:tick\"]}"),
+            entry("data/ns/function/tick.mcfunction", "function ns:dispatch {id:\"a\"}\nsay ticked"),
+            entry("data/ns/function/dispatch.mcfunction", "$function ns:handlers/$(id)\nsay dispatched"),
+            entry("data/ns/function/handlers/a.mcfunction", "say a\nsay again"),
+            entry("data/ns/function/handlers/b.mcfunction", "say b\nsay again"),
+            entry("data/ns/function/other/c.mcfunction", "say c")
+        ), ForkJoinPool.commonPool());
+
+        assertEquals(Set.of(
+            "data/minecraft/tags/function/tick.json",
+            "data/ns/function/tick.mcfunction",
+            "data/ns/function/dispatch.mcfunction",
+            "data/ns/function/handlers/a.mcfunction",
+            "data/ns/function/handlers/b.mcfunction"
+        ), getNames(processed));
+        assertEquals(1, preprocessor.getRemovedFunctions());
+    }
+    @Test
+    void keepsEveryFunctionOfAnyNamespaceForMacroNamespaces() throws IOException {
+        FunctionPreprocessor preprocessor = new FunctionPreprocessor(List.of("ns:dispatch"), new BuildMetrics("Test", 0, false));
+        List<PackEntry> processed = preprocessor.process(List.of(
+            entry("data/ns/function/dispatch.mcfunction", "$function $(namespace):run\nsay dispatched"),
+            entry("data/a/function/run.mcfunction", "say a\nsay again"),
+            entry("data/b/function/run.mcfunction", "say b\nsay again")
+        ), ForkJoinPool.commonPool());
+
+        assertEquals(3, processed.size());
+        assertEquals(0, preprocessor.getRemovedFunctions());
+    }
+    @Test
+    void findsCallsInCommandsAndJson() {
+        assertEquals(List.of("ns:a"), findCalls("function ns:a"));
+        assertEquals(List.of("ns:a"), findCalls("execute as @a run function ns:a"));
+        assertEquals(List.of("ns:a"), findCalls("tellraw @a {\"clickEvent\":{\"action\":\"run_command\",\"value\":\"/function ns:a\"}}"));
+        assertEquals(List.of("ns:a"), findCalls("data modify storage ns:s command set value \"function ns:a\""));
+        assertEquals(List.of(), findCalls("say dysfunction ns:a"));
+    }
+
+    static List<String> findCalls(String command) {
+        ArrayList<String> calls = new ArrayList<>();
+        Matcher call = FunctionPreprocessor.CALL.matcher(command);
+        while (call.find()) {
+            calls.add(call.group(1));
+        }
+        return calls;
+    }
+    static PackEntry entry(String name, String content) {
+        return PackEntry.ofBytes(name, content.getBytes(StandardCharsets.UTF_8));
+    }
+    static TreeSet<String> getNames(List<PackEntry> entries) {
+        TreeSet<String> names = new TreeSet<>();
+        for (PackEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ParallelZipWriterTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void writesStoredEntries() throws IOException {
+        assertWritesEntries(CompressionPolicy.parse("*:stored", 1.1), 3);
+    }
+    @Test
+    void writesDefaultEntries() throws IOException {
+        assertWritesEntries(CompressionPolicy.parse("*:default", 1.1), 3);
+    }
+    @Test
+    void writesAutoEntries() throws IOException {
+        assertWritesEntries(CompressionPolicy.parse("*:auto", 1.1), 3);
+    }
+    @Test
+    void writesMaxEntries() throws IOException {
+        // Max compression is slow, so the entries are only a little larger than a chunk.
+        assertWritesEntries(CompressionPolicy.parse("*:max", 1.1, 1, 0), 1);
+    }
+    @Test
+    void writesMixedEntries() throws IOException {
+        assertWritesEntries(CompressionPolicy.parse("bin:stored, txt:auto, *:1", 1.1), 3);
+    }
+    @Test
+    void combinesCrcs() {
+        byte[] data = new byte[3 * ParallelZipWriter.CHUNK_SIZE + 12345];
+        new Random(1).nextBytes(data);
+        for (int split : new int[] {0, 1, 1000, ParallelZipWriter.CHUNK_SIZE, data.length - 1, data.length}) {
+            long first = getCrc(data, 0, split);
+            long second = getCrc(data, split, data.length - split);
+            assertEquals(getCrc(data, 0, data.length), ParallelZipWriter.combineCrc(first, second, data.length - split), "Split at " + split);
+        }
+    }
+
+    // The largest entry is split into chunks and one more, smaller chunk.
+    void assertWritesEntries(CompressionPolicy policy, int chunks) throws IOException {
+        ArrayList<PackEntry> entries = new ArrayList<>();
+        entries.add(PackEntry.ofBytes("pack.mcmeta", "{\"pack\":{\"pack_format\":48,\"description\":\"Test\"}}".getBytes(StandardCharsets.UTF_8)));
+        entries.add(PackEntry.ofBytes("empty.json", new byte[0]));
+        entries.add(PackEntry.ofFile("text.txt", writeFile("text.txt", createText(chunks * ParallelZipWriter.CHUNK_SIZE + 1000, 2))));
+        entries.add(PackEntry.ofFile("random.bin", writeFile("random.bin", createRandom(ParallelZipWriter.CHUNK_SIZE + 1000, 3))));
+        // Whole chunks, so the last one ends right at a chunk boundary.
+        entries.add(PackEntry.ofBytes("model.json", createText(chunks * ParallelZipWriter.CHUNK_SIZE, 4)));
+        byte[] repeated = new byte[ParallelZipWriter.CHUNK_SIZE + 1];
+        Arrays.fill(repeated, (byte) 'x');
+        entries.add(PackEntry.ofBytes("repeated.txt", repeated));
+
+        Path zipPath = folder.resolve("pack.zip");
+        ParallelZipWriter writer = new ParallelZipWriter(ForkJoinPool.commonPool(), policy, null, new SourceReader(1 << 20), new BuildMetrics("Test", 0, false));
+        try (ZipArchiveWriter zip = new ZipArchiveWriter(FileChannel.open(zipPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            writer.write(zip, entries, policy.describe(), null, null);
+        }
+
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            assertEquals(entries.size(), zip.size());
+            for (PackEntry entry : entries) {
+                byte[] expected = entry.isInMemory() ? entry.getContent() : Files.readAllBytes(entry.getSource());
+                ZipEntry zipEntry = zip.getEntry(entry.getName());
+                assertNotNull(zipEntry, entry.getName());
+                assertEquals(getCrc(expected, 0, expected.length), zipEntry.getCrc(), entry.getName());
+                assertEquals(expected.length, zipEntry.getSize(), entry.getName());
+                try (InputStream input = zip.getInputStream(zipEntry)) {
+                    assertArrayEquals(expected, input.readAllBytes(), entry.getName());
+                }
+            }
+        }
+    }
+    Path writeFile(String name, byte[] content) throws IOException {
+        return Files.write(folder.resolve(name), content);
+    }
+
+    static byte[] createText(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 100);
+        while (text.length() < length) {
+            text.append("{\"parent\":\"minecraft:block/cube_all\",\"textures\":{\"all\":\"ns:block/").append(random.nextInt(1000)).append("\"}}\n");
+        }
+        return text.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+    static byte[] createRandom(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+    static long getCrc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+}
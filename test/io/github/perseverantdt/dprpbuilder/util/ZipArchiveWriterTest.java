@@ -0,0 +1,149 @@
+package io.github.perseverantdt.dprpbuilder.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ZipArchiveWriterTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void writesZip64ForManyEntries() throws IOException {
+        int count = 70_000;
+        Path zipPath = folder.resolve("many.zip");
+        try (ZipArchiveWriter zip = open(zipPath)) {
+            for (int i = 0; i < count; i++) {
+                writeStored(zip, "data/ns/function/" + i + ".mcfunction", ("say " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        byte[] bytes = Files.readAllBytes(zipPath);
+        // The end of central directory record only has room for 65535 entries.
+        int end = bytes.length - 22;
+        assertEquals(0xFFFF, (bytes[end + 8] & 0xFF) | (bytes[end + 9] & 0xFF) << 8);
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            assertEquals(count, zip.size());
+            for (int i : new int[] {0, 65534, 65535, 65536, count - 1}) {
+                ZipEntry entry = zip.getEntry("data/ns/function/" + i + ".mcfunction");
+                try (InputStream input = zip.getInputStream(entry)) {
+                    assertEquals("say " + i + "\n", new String(input.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+    @Test
+    void computesSha1OfEverythingWritten() throws IOException, NoSuchAlgorithmException {
+        Path zipPath = folder.resolve("sha1.zip");
+        byte[] large = new byte[200_000];
+        new Random(1).nextBytes(large);
+        Path source = Files.write(folder.resolve("source.bin"), large);
+        ZipArchiveWriter zip = open(zipPath);
+        try {
+            writeStored(zip, "small.txt", "small".getBytes(StandardCharsets.UTF_8));
+            // Larger than the buffer of the writer, so it is written past it.
+            zip.beginEntry("large.bin", ZipEntry.STORED, 0, getCrc(large), large.length, large.length);
+            zip.write(ByteBuffer.wrap(large));
+            zip.endEntry(getCrc(large), large.length, large.length);
+            zip.beginEntry("copied.bin", ZipEntry.STORED, 0, getCrc(large), large.length, large.length);
+            try (FileChannel channel = FileChannel.open(source)) {
+                zip.transferFrom(channel, 0, large.length);
+            }
+            zip.endEntry(getCrc(large), large.length, large.length);
+            assertNull(zip.getSha1());
+        }
+        finally {
+            zip.close();
+        }
+
+        assertEquals(Files.size(zipPath), zip.getOffset());
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(zipPath)), zip.getSha1());
+        try (ZipFile read = new ZipFile(zipPath.toFile())) {
+            for (String name : new String[] {"large.bin", "copied.bin"}) {
+                try (InputStream input = read.getInputStream(read.getEntry(name))) {
+                    assertArrayEquals(large, input.readAllBytes(), name);
+                }
+            }
+        }
+    }
+    @Test
+    void writesDataDescriptorsForStreamedEntries() throws IOException {
+        byte[] content = "{\"values\":[\"ns:tick\"]}".repeat(100).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream output = new DeflaterOutputStream(deflated, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            output.write(content);
+        }
+        Path zipPath = folder.resolve("streamed.zip");
+        try (ZipArchiveWriter zip = open(zipPath)) {
+            zip.beginEntry("tick.json", ZipEntry.DEFLATED, System.currentTimeMillis());
+            zip.write(deflated.toByteArray(), 0, deflated.size());
+            zip.endEntry(getCrc(content), deflated.size(), content.length);
+            writeStored(zip, "pack.mcmeta", "{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Read both through the central directory and in order through the local headers.
+        try (ZipFile zip = new ZipFile(zipPath.toFile()); InputStream input = zip.getInputStream(zip.getEntry("tick.json"))) {
+            assertArrayEquals(content, input.readAllBytes());
+            assertEquals(getCrc(content), zip.getEntry("tick.json").getCrc());
+        }
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(zipPath))) {
+            assertEquals("tick.json", input.getNextEntry().getName());
+            assertArrayEquals(content, input.readAllBytes());
+            assertEquals("pack.mcmeta", input.getNextEntry().getName());
+            assertNull(input.getNextEntry());
+        }
+    }
+    @Test
+    void writesTheSameBytesWithAFixedTime() throws IOException {
+        Path first = folder.resolve("first.zip");
+        Path second = folder.resolve("second.zip");
+        try (ZipArchiveWriter zip = open(first)) {
+            zip.setFixedTime(ZipArchiveWriter.getReproducibleTime());
+            writeStored(zip, "pack.mcmeta", "{}".getBytes(StandardCharsets.UTF_8), 0);
+        }
+        try (ZipArchiveWriter zip = open(second)) {
+            zip.setFixedTime(ZipArchiveWriter.getReproducibleTime());
+            writeStored(zip, "pack.mcmeta", "{}".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+        }
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    static ZipArchiveWriter open(Path path) throws IOException {
+        return new ZipArchiveWriter(FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    }
+    static void writeStored(ZipArchiveWriter zip, String name, byte[] content) throws IOException {
+        writeStored(zip, name, content, 0);
+    }
+    static void writeStored(ZipArchiveWriter zip, String name, byte[] content, long time) throws IOException {
+        zip.beginEntry(name, ZipEntry.STORED, time, getCrc(content), content.length, content.length);
+        zip.write(content, 0, content.length);
+        zip.endEntry(getCrc(content), content.length, content.length);
+    }
+    static long getCrc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}